@@ -0,0 +1,53 @@
+package com.biksen.kyc;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.corda.core.crypto.Party;
+
+import com.biksen.kyc.contract.KYCContract;
+import com.biksen.kyc.contract.KYCState;
+import com.biksen.kyc.model.KYC;
+
+/**
+ * Kyc states shared by the benchmarks, between the parties of [TestFixtures].
+ */
+public final class BenchmarkFixtures {
+    public static final Party NOTARY = TestFixtures.NOTARY;
+    public static final Party BUYER = TestFixtures.BUYER;
+    public static final Party SELLER = TestFixtures.SELLER;
+
+    private static final String[] DOC_TYPES = { "PAN", "AADHAAR", "PASSPORT", "VOTERID" };
+
+    private static final LocalDate FIRST_KYC_DATE = LocalDate.of(2017, 1, 1);
+
+    private BenchmarkFixtures() {}
+
+    /**
+     * Returns the i-th of a deterministic series of kycs: a few thousand users, a handful of document types, kyc dates
+     * spread over a year and a one-year validity.
+     */
+    public static KYC kyc(int i) {
+        return KYC.builder()
+                .kycId(i)
+                .userId("user" + (i % 5000))
+                .userName("User " + (i % 5000))
+                .kycDate(FIRST_KYC_DATE.plusDays(i % 365))
+                .kycValidDate(FIRST_KYC_DATE.plusDays(i % 365 + 365))
+                .docId(DOC_TYPES[i % DOC_TYPES.length] + (1000000 + i))
+                .build();
+    }
+
+    public static KYCState kycState(int i) {
+        return new KYCState(kyc(i), BUYER, SELLER, new KYCContract());
+    }
+
+    public static List<KYCState> kycStates(int count) {
+        final List<KYCState> states = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            states.add(kycState(i));
+        }
+        return states;
+    }
+}
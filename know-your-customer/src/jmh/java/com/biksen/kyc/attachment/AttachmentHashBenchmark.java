@@ -0,0 +1,64 @@
+package com.biksen.kyc.attachment;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import net.corda.core.crypto.SecureHash;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * SHA-256 of a document bundle on disk with [SHA256Util.digest] ("streamed", which maps files of at least
+ * [SHA256Util.MAP_THRESHOLD]) against reading the whole file onto the heap and hashing it with SecureHash ("heap").
+ * The sizes straddle the mapping threshold.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AttachmentHashBenchmark {
+    @Param({ "65536", "1048576", "16777216", "134217728" })
+    public int size;
+
+    private Path file;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        final byte[] content = new byte[size];
+        new Random(size).nextBytes(content);
+        file = Files.createTempFile("kyc-bundle", ".zip");
+        Files.write(file, content);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public byte[] streamed() throws IOException {
+        return SHA256Util.digest(file);
+    }
+
+    @Benchmark
+    public SecureHash heap() throws IOException {
+        return SecureHash.sha256(Files.readAllBytes(file));
+    }
+}
@@ -0,0 +1,52 @@
+package com.biksen.kyc.contract;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import net.corda.core.transactions.TransactionBuilder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.biksen.kyc.BenchmarkFixtures;
+
+/**
+ * Cost of building the issuance a KYC flow proposes: [KYCState.generateAgreement] for one state ("single", as
+ * [KYCFlow.Initiator] does) and for the whole batch in one transaction ("batch", as [KYCFlow.BatchInitiator] does).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GenerateAgreementBenchmark {
+    @Param({ "1", "100", "1000" })
+    public int states;
+
+    private List<KYCState> batch;
+
+    @Setup
+    public void setUp() {
+        batch = BenchmarkFixtures.kycStates(states);
+    }
+
+    @Benchmark
+    public TransactionBuilder single() {
+        return batch.get(0).generateAgreement(BenchmarkFixtures.NOTARY);
+    }
+
+    @Benchmark
+    public TransactionBuilder batch() {
+        return KYCState.generateAgreement(batch, BenchmarkFixtures.NOTARY);
+    }
+}
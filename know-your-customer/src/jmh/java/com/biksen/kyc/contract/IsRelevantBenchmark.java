@@ -0,0 +1,120 @@
+package com.biksen.kyc.contract;
+
+import static java.util.stream.Collectors.toList;
+
+import java.security.PublicKey;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import net.corda.core.crypto.CryptoUtilities;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.biksen.kyc.BenchmarkFixtures;
+
+/**
+ * Replays the vault's relevance check over a batch of kyc states, as a node does when it records them, with the
+ * stream-and-list implementation KYCState used to have ("legacy") against [KYCState.isRelevant].
+ *
+ * The "fresh" variants check a new copy of each state, as the vault does for states it has just deserialised, so the
+ * participant key set is built on every call; the others check the same instances again and see it cached.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IsRelevantBenchmark {
+    @Param({ "10000" })
+    public int states;
+
+    /** Whether our node is a participant ("relevant") or a third party ("irrelevant"). */
+    @Param({ "relevant", "irrelevant" })
+    public String ownership;
+
+    /** Number of keys the node holds. */
+    @Param({ "1", "16" })
+    public int ourKeyCount;
+
+    private List<KYCState> batch;
+    private Set<PublicKey> ourKeys;
+
+    @Setup
+    public void setUp() {
+        batch = BenchmarkFixtures.kycStates(states);
+        ourKeys = new HashSet<>();
+        for (int i = ourKeyCount; i > 1; i--) {
+            ourKeys.add(CryptoUtilities.generateKeyPair().getPublic());
+        }
+        ourKeys.add(ownership.equals("relevant")
+                ? BenchmarkFixtures.SELLER.getOwningKey().getKeys().iterator().next()
+                : CryptoUtilities.generateKeyPair().getPublic());
+    }
+
+    @Benchmark
+    public int legacy() {
+        int relevant = 0;
+        for (KYCState state : batch) {
+            if (legacyIsRelevant(state, ourKeys)) {
+                relevant++;
+            }
+        }
+        return relevant;
+    }
+
+    @Benchmark
+    public int cached() {
+        int relevant = 0;
+        for (KYCState state : batch) {
+            if (state.isRelevant(ourKeys)) {
+                relevant++;
+            }
+        }
+        return relevant;
+    }
+
+    @Benchmark
+    public int legacyFresh() {
+        int relevant = 0;
+        for (KYCState state : batch) {
+            if (legacyIsRelevant(state.withAttachment(null), ourKeys)) {
+                relevant++;
+            }
+        }
+        return relevant;
+    }
+
+    @Benchmark
+    public int cachedFresh() {
+        int relevant = 0;
+        for (KYCState state : batch) {
+            if (state.withAttachment(null).isRelevant(ourKeys)) {
+                relevant++;
+            }
+        }
+        return relevant;
+    }
+
+    private static boolean legacyIsRelevant(KYCState state, Set<? extends PublicKey> ourKeys) {
+        final List<PublicKey> partyKeys = state.getParties()
+                .stream()
+                .flatMap(party -> party.getOwningKey().getKeys().stream())
+                .collect(toList());
+        return ourKeys
+                .stream()
+                .anyMatch(partyKeys::contains);
+    }
+}
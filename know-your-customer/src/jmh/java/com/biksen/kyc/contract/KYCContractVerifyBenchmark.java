@@ -0,0 +1,90 @@
+package com.biksen.kyc.contract;
+
+import static java.util.stream.Collectors.toList;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import net.corda.core.contracts.AuthenticatedObject;
+import net.corda.core.contracts.CommandData;
+import net.corda.core.contracts.ContractState;
+import net.corda.core.contracts.Timestamp;
+import net.corda.core.contracts.TransactionForContract;
+import net.corda.core.contracts.clauses.AllComposition;
+import net.corda.core.contracts.clauses.ClauseVerifier;
+import net.corda.core.crypto.SecureHash;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.biksen.kyc.BenchmarkFixtures;
+
+/**
+ * Throughput of [KYCContract.verify] on an issuance carrying many [KYCState] outputs, as built by
+ * [KYCFlow.BatchInitiator], against the previous implementation that built the clause tree and re-wrapped every
+ * command on each call ("legacy").
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KYCContractVerifyBenchmark {
+    @Param({ "1", "100", "1000" })
+    public int outputs;
+
+    private final KYCContract contract = new KYCContract();
+    private TransactionForContract tx;
+
+    @Setup
+    public void setUp() {
+        final List<KYCState> states = BenchmarkFixtures.kycStates(outputs);
+        final AuthenticatedObject<CommandData> place = new AuthenticatedObject<>(
+                states.get(0).getParticipants(),
+                Arrays.asList(BenchmarkFixtures.BUYER, BenchmarkFixtures.SELLER),
+                new KYCContract.Commands.Place());
+        tx = new TransactionForContract(
+                Collections.emptyList(),
+                new ArrayList<ContractState>(states),
+                Collections.emptyList(),
+                Collections.singletonList(place),
+                SecureHash.randomSHA256(),
+                BenchmarkFixtures.NOTARY,
+                new Timestamp(Instant.now(), Duration.ofSeconds(30)));
+    }
+
+    @Benchmark
+    public void cached() {
+        contract.verify(tx);
+    }
+
+    @Benchmark
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    public void legacy() {
+        final AllComposition com = new AllComposition<>(new KYCContract.Clauses.Timestamp(), new KYCContract.Clauses.Group());
+        final List<AuthenticatedObject<KYCContract.Commands>> commands = tx.getCommands()
+                .stream()
+                .filter(command -> command.getValue() instanceof KYCContract.Commands)
+                .map(command -> new AuthenticatedObject<>(
+                        command.getSigners(),
+                        command.getSigningParties(),
+                        (KYCContract.Commands) command.getValue()))
+                .collect(toList());
+        ClauseVerifier.verifyClause(tx, com, commands);
+    }
+}
@@ -0,0 +1,89 @@
+package com.biksen.kyc.contract;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.objenesis.strategy.StdInstantiatorStrategy;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.biksen.kyc.BenchmarkFixtures;
+import com.biksen.kyc.model.KYC;
+import com.biksen.kyc.model.KYCSerializer;
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import com.esotericsoftware.kryo.serializers.FieldSerializer;
+
+/**
+ * Encode and decode throughput of a batch of [KYCState]s with Kryo's field serializers ("field", still used for P2P
+ * messages, checkpoints and storage) against [KYCSerializer] and [KYCStateSerializer] ("compact", used over RPC).
+ * The serialized size of each encoding is printed at the end of the trial.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KYCSerializationBenchmark {
+    @Param({ "field", "compact" })
+    public String encoding;
+
+    @Param({ "1", "100" })
+    public int batchSize;
+
+    private Kryo kryo;
+    private ArrayList<KYCState> batch;
+    private Output output;
+    private byte[] encoded;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        kryo = new Kryo();
+        kryo.setInstantiatorStrategy(new Kryo.DefaultInstantiatorStrategy(new StdInstantiatorStrategy()));
+        if (encoding.equals("compact")) {
+            kryo.register(KYCState.class, new KYCStateSerializer());
+            kryo.register(KYC.class, new KYCSerializer());
+        } else {
+            kryo.register(KYCState.class, new FieldSerializer<>(kryo, KYCState.class));
+            kryo.register(KYC.class, new FieldSerializer<>(kryo, KYC.class));
+        }
+        kryo.register(KYCContract.class);
+        kryo.register(Date.class);
+        kryo.register(ArrayList.class);
+
+        batch = new ArrayList<>(BenchmarkFixtures.kycStates(batchSize));
+        output = new Output(4096, -1);
+        encoded = encode();
+    }
+
+    @TearDown(Level.Trial)
+    public void reportSize() {
+        System.out.printf("%n%s encoding of %d kyc state(s): %d bytes%n", encoding, batchSize, encoded.length);
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        output.clear();
+        kryo.writeObject(output, batch);
+        return output.toBytes();
+    }
+
+    @Benchmark
+    public Object decode() {
+        return kryo.readObject(new Input(encoded), ArrayList.class);
+    }
+}
@@ -0,0 +1,63 @@
+package com.biksen.kyc.contract;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.biksen.kyc.BenchmarkFixtures;
+import com.biksen.kyc.model.KYC;
+
+/**
+ * Runs [KYCValidator.validate] over a transaction's worth of outputs. Divide the score by the state count for the
+ * per-state cost.
+ *
+ * "valid" states pass every rule and should not allocate up to [KYCValidator.PAIRWISE_LIMIT] states; beyond that the
+ * uniqueness check allocates one int[] per call. Check with "gradlew jmh -Pbenchmarks=KYCValidator -Pprofilers=gc" and
+ * the gc.alloc.rate.norm column. In "invalid" batches every state has a malformed user id and shares its kyc id with a
+ * neighbour, so the score includes building the failure messages.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KYCValidatorBenchmark {
+    @Param({ "1", "64", "100", "1000" })
+    public int states;
+
+    @Param({ "valid", "invalid" })
+    public String validity;
+
+    private List<KYCState> outputs;
+
+    @Setup
+    public void setUp() {
+        if (validity.equals("valid")) {
+            outputs = BenchmarkFixtures.kycStates(states);
+            return;
+        }
+        outputs = new ArrayList<>(states);
+        for (int i = 0; i < states; i++) {
+            final KYC kyc = BenchmarkFixtures.kyc(i).toBuilder().kycId(i / 2).userId("user #" + i).build();
+            outputs.add(new KYCState(kyc, BenchmarkFixtures.BUYER, BenchmarkFixtures.SELLER, new KYCContract()));
+        }
+    }
+
+    @Benchmark
+    public List<String> validate() {
+        return KYCValidator.validate(outputs);
+    }
+}
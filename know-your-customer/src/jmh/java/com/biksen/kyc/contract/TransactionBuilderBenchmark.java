@@ -0,0 +1,46 @@
+package com.biksen.kyc.contract;
+
+import java.lang.reflect.Constructor;
+import java.util.concurrent.TimeUnit;
+
+import net.corda.core.contracts.TransactionType;
+import net.corda.core.crypto.Party;
+import net.corda.core.transactions.TransactionBuilder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.biksen.kyc.BenchmarkFixtures;
+
+/**
+ * Cost of obtaining an empty general [TransactionBuilder]: the per-call reflective lookup the flows used to do,
+ * against [TransactionBuilderFactory].
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TransactionBuilderBenchmark {
+    private final Party notary = BenchmarkFixtures.NOTARY;
+
+    @Benchmark
+    public TransactionBuilder reflective() throws Exception {
+        final Class<?> classDefinition = TransactionType.General.class.getDeclaredClasses()[0];
+        final Constructor<?> cons = classDefinition.getConstructor(Party.class);
+        return (TransactionBuilder) cons.newInstance(notary);
+    }
+
+    @Benchmark
+    public TransactionBuilder factory() {
+        return TransactionBuilderFactory.newBuilder(notary);
+    }
+}
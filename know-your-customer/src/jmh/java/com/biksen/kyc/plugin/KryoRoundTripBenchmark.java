@@ -0,0 +1,75 @@
+package com.biksen.kyc.plugin;
+
+import java.lang.reflect.Constructor;
+import java.util.concurrent.TimeUnit;
+
+import net.corda.core.crypto.SecureHash;
+
+import org.objenesis.strategy.StdInstantiatorStrategy;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.biksen.kyc.BenchmarkFixtures;
+import com.biksen.kyc.flow.AttachmentFlow;
+import com.biksen.kyc.flow.KYCFlow;
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+
+/**
+ * Encodes and decodes one value of each type [KYCPlugin.registerRPCKryoTypes] registers, through a Kryo configured
+ * by the plugin itself, so the figures follow whatever serializers it installs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KryoRoundTripBenchmark {
+    @Param({ "KYC", "KYCState", "KYCFlowResult", "AttachmentFlowResult", "IllegalArgumentException" })
+    public String type;
+
+    private Kryo kryo;
+    private Object value;
+    private Output output;
+
+    @Setup
+    public void setUp() throws Exception {
+        kryo = new Kryo();
+        kryo.setInstantiatorStrategy(new Kryo.DefaultInstantiatorStrategy(new StdInstantiatorStrategy()));
+        new KYCPlugin().registerRPCKryoTypes(kryo);
+
+        switch (type) {
+            case "KYC": value = BenchmarkFixtures.kyc(42); break;
+            case "KYCState": value = BenchmarkFixtures.kycState(42); break;
+            case "KYCFlowResult": value = result(KYCFlow.KYCFlowResult.Success.class); break;
+            case "AttachmentFlowResult": value = result(AttachmentFlow.AttachmentFlowResult.Success.class); break;
+            default: value = new IllegalArgumentException("The kyc valid date must be after the kyc date."); break;
+        }
+        output = new Output(4096, -1);
+    }
+
+    @Benchmark
+    public Object roundTrip() {
+        output.clear();
+        kryo.writeClassAndObject(output, value);
+        return kryo.readClassAndObject(new Input(output.getBuffer(), 0, output.position()));
+    }
+
+    /** The flow results only have private constructors; build one as the flows would. */
+    private static Object result(Class<?> type) throws Exception {
+        final Constructor<?> constructor = type.getDeclaredConstructor(String.class);
+        constructor.setAccessible(true);
+        return constructor.newInstance("Transaction id " + SecureHash.sha256("kyc") + " committed to ledger.");
+    }
+}
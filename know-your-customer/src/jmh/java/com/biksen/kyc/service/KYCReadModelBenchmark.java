@@ -0,0 +1,118 @@
+package com.biksen.kyc.service;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import kotlin.Pair;
+import net.corda.core.contracts.ContractState;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.contracts.StateRef;
+import net.corda.core.contracts.TransactionState;
+import net.corda.core.crypto.SecureHash;
+import net.corda.core.messaging.CordaRPCOps;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import rx.Observable;
+
+import com.biksen.kyc.BenchmarkFixtures;
+import com.biksen.kyc.contract.KYCState;
+import com.biksen.kyc.model.KYC;
+
+/**
+ * The lookup behind KYCApi.getKYCsByUserId over a synthetic vault: [KYCReadModel.latestForUser] ("indexed") against
+ * the full vault scan the endpoint used to run on every request ("scan").
+ *
+ * The vault is served by a stub [CordaRPCOps] that only answers vaultAndUpdates; the read model is filled from its
+ * snapshot before measuring. Each invocation looks up the next of the fixtures' users in turn.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class KYCReadModelBenchmark {
+    private static final int USERS = 5000;
+    private static final int STATES_PER_TRANSACTION = 100;
+
+    @Param({ "10000", "100000", "1000000" })
+    public int states;
+
+    private List<StateAndRef<ContractState>> vault;
+    private KYCReadModel readModel;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws InterruptedException {
+        vault = new ArrayList<>(states);
+        SecureHash txId = null;
+        for (int i = 0; i < states; i++) {
+            if (i % STATES_PER_TRANSACTION == 0) {
+                txId = SecureHash.randomSHA256();
+            }
+            vault.add(new StateAndRef<>(
+                    new TransactionState<ContractState>(BenchmarkFixtures.kycState(i), BenchmarkFixtures.NOTARY),
+                    new StateRef(txId, i % STATES_PER_TRANSACTION)));
+        }
+
+        readModel = new KYCReadModel(rpcServing(vault));
+        while (readModel.size() < states) {
+            Thread.sleep(10);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        readModel.close();
+    }
+
+    @Benchmark
+    public KYC indexed() {
+        return readModel.latestForUser(nextUser());
+    }
+
+    @Benchmark
+    public KYC scan() {
+        final String userId = nextUser();
+        final List<KYC> matches = new ArrayList<>();
+        for (StateAndRef<ContractState> stateAndRef : vault) {
+            final KYCState state = (KYCState) stateAndRef.getState().getData();
+            if (state.getKYC().getUserId().equalsIgnoreCase(userId)) {
+                matches.add(state.getKYC());
+            }
+        }
+        return Collections.max(matches, Comparator.comparing(KYC::getKycDate));
+    }
+
+    private String nextUser() {
+        next = (next + 1) % Math.min(USERS, states);
+        return "user" + next;
+    }
+
+    private static CordaRPCOps rpcServing(List<StateAndRef<ContractState>> vault) {
+        return (CordaRPCOps) Proxy.newProxyInstance(CordaRPCOps.class.getClassLoader(), new Class<?>[] { CordaRPCOps.class },
+                (proxy, method, args) -> {
+                    if (method.getName().equals("vaultAndUpdates")) {
+                        return new Pair<>(vault, Observable.never());
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+    }
+}
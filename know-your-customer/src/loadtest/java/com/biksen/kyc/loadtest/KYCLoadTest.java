@@ -0,0 +1,210 @@
+package com.biksen.kyc.loadtest;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import net.corda.core.crypto.Party;
+import net.corda.core.crypto.SecureHash;
+import net.corda.core.flows.FlowLogic;
+import net.corda.core.flows.FlowStateMachine;
+import net.corda.core.utilities.TestConstants;
+import net.corda.node.utilities.AddOrRemove;
+import net.corda.testing.node.InMemoryMessagingNetwork;
+import net.corda.testing.node.MockNetwork;
+import rx.Subscription;
+
+import com.biksen.kyc.contract.KYCContract;
+import com.biksen.kyc.contract.KYCState;
+import com.biksen.kyc.flow.KYCFlow;
+import com.biksen.kyc.model.KYC;
+
+/**
+ * Drives KYC onboarding flows through an in-memory network in one JVM and reports flows per second and the latency
+ * of each [KYCFlow.Initiator] step and, on the counterparties, of each [KYCFlow.Acceptor] step.
+ *
+ * The network is a notary, one initiating node and the given number of counterparties, built with the Corda
+ * MockNetwork with a thread per node, so flows really run concurrently. The nodes load this CorDapp's plugin from
+ * the classpath as a deployed node would, which registers the acceptors. A warm-up round is run and discarded first.
+ *
+ * Settings are system properties:
+ *   kyc.load.flows          flows to run (default 1000)
+ *   kyc.load.concurrency    flows in flight at once (default 32)
+ *   kyc.load.counterparties counterparty nodes, used round-robin (default 3)
+ *   kyc.load.attachmentKb   size of a distinct document bundle attached to each flow, 0 for none (default 0)
+ *   kyc.load.warmup         warm-up flows (default 100)
+ *   kyc.load.reportDir      where the .hgrm reports are written (default build/reports/loadtest)
+ */
+public class KYCLoadTest {
+    private final int flows = Integer.getInteger("kyc.load.flows", 1000);
+    private final int concurrency = Integer.getInteger("kyc.load.concurrency", 32);
+    private final int counterparties = Integer.getInteger("kyc.load.counterparties", 3);
+    private final int attachmentKb = Integer.getInteger("kyc.load.attachmentKb", 0);
+    private final int warmup = Integer.getInteger("kyc.load.warmup", 100);
+    private final String reportDir = System.getProperty("kyc.load.reportDir", "build/reports/loadtest");
+
+    private final AtomicInteger nextKycId = new AtomicInteger();
+
+    private MockNetwork network;
+    private MockNetwork.MockNode initiator;
+    private List<MockNetwork.MockNode> counterpartyNodes;
+
+    public static void main(String[] args) throws Exception {
+        new KYCLoadTest().run();
+    }
+
+    private void run() throws Exception {
+        network = new MockNetwork(false, true,
+                new InMemoryMessagingNetwork.ServicePeerAllocationStrategy.Random(new SplittableRandom()),
+                MockNetwork.DefaultFactory.INSTANCE);
+        try {
+            final MockNetwork.BasketOfNodes nodes = network.createSomeNodes(
+                    counterparties + 1, MockNetwork.DefaultFactory.INSTANCE, TestConstants.getDUMMY_NOTARY_KEY());
+            initiator = nodes.getPartyNodes().get(0);
+            counterpartyNodes = nodes.getPartyNodes().subList(1, nodes.getPartyNodes().size());
+
+            System.out.printf("Warming up with %d flows...%n", warmup);
+            runRound(warmup, new StepLatencyRecorder());
+
+            System.out.printf("Running %d flows, %d in flight, across %d counterparties, %s%n", flows, concurrency,
+                    counterparties, attachmentKb == 0 ? "without attachments" : attachmentKb + " KB attachment each");
+            final StepLatencyRecorder recorder = new StepLatencyRecorder();
+            final long startedAt = System.nanoTime();
+            final int failures = runRound(flows, recorder);
+            final double seconds = (System.nanoTime() - startedAt) / 1e9;
+
+            System.out.printf("%n%d flows in %.1f s: %.1f flows/s, %d failed%n%n", flows, seconds, flows / seconds, failures);
+            recorder.printSummary(System.out);
+            recorder.writeReports(Paths.get(reportDir));
+            System.out.printf("%nHDR histograms written to %s%n", reportDir);
+        } finally {
+            network.stopNodes();
+        }
+    }
+
+    /**
+     * Runs the flows with at most [concurrency] in flight and returns how many did not succeed.
+     */
+    private int runRound(int count, StepLatencyRecorder recorder) throws Exception {
+        final Semaphore inFlight = new Semaphore(concurrency);
+        final CountDownLatch done = new CountDownLatch(count);
+        final CountDownLatch acceptorsDone = new CountDownLatch(count);
+        final AtomicInteger failures = new AtomicInteger();
+        final List<Subscription> acceptors = trackAcceptors(recorder, acceptorsDone);
+
+        for (int i = 0; i < count; i++) {
+            final MockNetwork.MockNode counterparty = counterpartyNodes.get(i % counterpartyNodes.size());
+            // Bundles are imported before the flow is timed; only the transfer to the acceptor is measured.
+            final SecureHash.SHA256 attachment = attachmentKb == 0 ? null : importBundle(i);
+            final KYCFlow.Initiator flow = new KYCFlow.Initiator(
+                    newState(counterparty.getInfo().getLegalIdentity()),
+                    counterparty.getInfo().getLegalIdentity(),
+                    attachment);
+
+            inFlight.acquire();
+            final StepLatencyRecorder.Tracking tracking = recorder.track("Initiator", flow.getProgressTracker());
+            final FlowStateMachine<KYCFlow.KYCFlowResult> machine = initiator.getServices().startFlow(flow);
+            final ListenableFuture<KYCFlow.KYCFlowResult> result = machine.getResultFuture();
+            result.addListener(() -> {
+                tracking.finish();
+                if (!succeeded(result)) {
+                    failures.incrementAndGet();
+                }
+                inFlight.release();
+                done.countDown();
+            }, MoreExecutors.directExecutor());
+        }
+        done.await();
+        // Each acceptor records the final transaction after its initiator has finished.
+        if (!acceptorsDone.await(30, TimeUnit.SECONDS)) {
+            System.out.printf("%d acceptors had not finished; their last steps are not recorded.%n", acceptorsDone.getCount());
+        }
+        acceptors.forEach(Subscription::unsubscribe);
+        return failures.get();
+    }
+
+    /**
+     * Times the acceptor flow every counterparty starts, from the moment its state machine is added until it is
+     * removed.
+     */
+    private List<Subscription> trackAcceptors(StepLatencyRecorder recorder, CountDownLatch acceptorsDone) {
+        final Map<FlowLogic<?>, StepLatencyRecorder.Tracking> running = new ConcurrentHashMap<>();
+        final List<Subscription> subscriptions = new ArrayList<>(counterpartyNodes.size());
+        for (MockNetwork.MockNode node : counterpartyNodes) {
+            subscriptions.add(node.getSmm().getChanges()
+                    .filter(change -> change.getLogic() instanceof KYCFlow.Acceptor)
+                    .subscribe(change -> {
+                        if (change.getAddOrRemove() == AddOrRemove.ADD) {
+                            running.put(change.getLogic(), recorder.track("Acceptor", change.getLogic().getProgressTracker()));
+                        } else {
+                            final StepLatencyRecorder.Tracking tracking = running.remove(change.getLogic());
+                            if (tracking != null) {
+                                tracking.finish();
+                                acceptorsDone.countDown();
+                            }
+                        }
+                    }, error -> { }));
+        }
+        return subscriptions;
+    }
+
+    private KYCState newState(Party counterparty) {
+        final int kycId = nextKycId.incrementAndGet();
+        final LocalDate kycDate = LocalDate.of(2017, 1, 1).plusDays(kycId % 365);
+        final KYC kyc = KYC.builder()
+                .kycId(kycId)
+                .userId("user" + kycId)
+                .userName("Load Test User " + kycId)
+                .kycDate(kycDate)
+                .kycValidDate(kycDate.plusYears(2))
+                .docId("PAN" + (1000000 + kycId))
+                .build();
+        return new KYCState(kyc, initiator.getInfo().getLegalIdentity(), counterparty, new KYCContract());
+    }
+
+    /**
+     * Imports a distinct zip of about [attachmentKb] KB into the initiating node, so every acceptor has to fetch it.
+     */
+    private SecureHash.SHA256 importBundle(int i) throws IOException {
+        final byte[] content = new byte[attachmentKb * 1024];
+        new Random(i).nextBytes(content);
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(content.length + 512);
+        try (ZipOutputStream zip = new ZipOutputStream(bytes)) {
+            zip.putNextEntry(new ZipEntry("kyc-" + i + ".txt"));
+            zip.write(("Load test bundle " + i + "\n").getBytes(StandardCharsets.UTF_8));
+            zip.closeEntry();
+            zip.putNextEntry(new ZipEntry("scan-" + i + ".bin"));
+            zip.write(content);
+            zip.closeEntry();
+        }
+        return (SecureHash.SHA256) initiator.getServices().getStorageService().getAttachments()
+                .importAttachment(new ByteArrayInputStream(bytes.toByteArray()));
+    }
+
+    private static boolean succeeded(ListenableFuture<KYCFlow.KYCFlowResult> result) {
+        try {
+            return result.get() instanceof KYCFlow.KYCFlowResult.Success;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.biksen.kyc.loadtest;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.corda.core.utilities.ProgressTracker;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import rx.Observable;
+
+/**
+ * Per-step latency histograms for flows driven by the load test. Subscribe a flow's [ProgressTracker] before starting
+ * it; the time between two step changes is recorded against the step that was left, and the last step is closed by
+ * [finish]. Steps are keyed "<flow>: <step label>", so the initiator's and the acceptor's steps of the same name are
+ * kept apart.
+ *
+ * Histograms auto-resize and keep three significant digits, so recording never allocates on the hot path.
+ */
+public class StepLatencyRecorder {
+    public static final String END_TO_END = "end to end";
+
+    private static final int SIGNIFICANT_DIGITS = 3;
+    private static final double[] PERCENTILES = { 50.0, 99.0, 99.9 };
+
+    /**
+     * The step a single flow is in and when it entered it.
+     */
+    public final class Tracking {
+        private final String flow;
+        private final long startedAt = System.nanoTime();
+        private String step;
+        private long stepStartedAt = startedAt;
+
+        private Tracking(String flow) {
+            this.flow = flow;
+        }
+
+        private synchronized void enter(String next) {
+            final long now = System.nanoTime();
+            if (step != null) {
+                record(flow + ": " + step, now - stepStartedAt);
+            }
+            step = next;
+            stepStartedAt = now;
+        }
+
+        /**
+         * Closes the current step and records the flow's end-to-end latency.
+         */
+        public void finish() {
+            enter(null);
+            record(flow + ": " + END_TO_END, System.nanoTime() - startedAt);
+        }
+    }
+
+    // Insertion order is lost in a concurrent map, so the report sorts steps by first-seen order instead.
+    private final Map<String, Histogram> histograms = new ConcurrentHashMap<>();
+    private final Map<String, Integer> order = new ConcurrentHashMap<>();
+    private final AtomicInteger nextPosition = new AtomicInteger();
+
+    /**
+     * Starts timing a flow. Must be called before the flow is started so the first step is not missed.
+     */
+    public Tracking track(String flow, ProgressTracker tracker) {
+        final Tracking tracking = new Tracking(flow);
+        final Observable<ProgressTracker.Change> changes = tracker.getChanges();
+        changes.ofType(ProgressTracker.Change.Position.class)
+                .map(ProgressTracker.Change.Position::getNewStep)
+                // The end of the last step is taken from the flow's result instead.
+                .filter(step -> step != ProgressTracker.UNSTARTED.INSTANCE && step != ProgressTracker.DONE.INSTANCE)
+                .subscribe(step -> tracking.enter(step.getLabel()), error -> { });
+        return tracking;
+    }
+
+    private void record(String step, long nanos) {
+        histograms.computeIfAbsent(step, key -> {
+            order.put(key, nextPosition.getAndIncrement());
+            return new ConcurrentHistogram(SIGNIFICANT_DIGITS);
+        }).recordValue(nanos);
+    }
+
+    /**
+     * Prints count, p50, p99, p999 and max for each step, in milliseconds.
+     */
+    public void printSummary(PrintStream out) {
+        out.printf("%-60s %8s %10s %10s %10s %10s%n", "Step", "count", "p50 ms", "p99 ms", "p99.9 ms", "max ms");
+        histograms.entrySet()
+                .stream()
+                .sorted((a, b) -> order.get(a.getKey()) - order.get(b.getKey()))
+                .forEach(entry -> {
+                    final Histogram histogram = entry.getValue();
+                    out.printf(Locale.ROOT, "%-60s %8d", truncate(entry.getKey()), histogram.getTotalCount());
+                    for (double percentile : PERCENTILES) {
+                        out.printf(Locale.ROOT, " %10.2f", millis(histogram.getValueAtPercentile(percentile)));
+                    }
+                    out.printf(Locale.ROOT, " %10.2f%n", millis(histogram.getMaxValue()));
+                });
+    }
+
+    /**
+     * Writes one HDR percentile distribution per step (the .hgrm format read by HdrHistogram's plotter) into the
+     * directory, values in milliseconds.
+     */
+    public void writeReports(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        for (Map.Entry<String, Histogram> entry : histograms.entrySet()) {
+            final Path report = directory.resolve(fileName(entry.getKey()) + ".hgrm");
+            try (PrintStream out = new PrintStream(Files.newOutputStream(report), false, "UTF-8")) {
+                entry.getValue().outputPercentileDistribution(out, (double) TimeUnit.MILLISECONDS.toNanos(1));
+            }
+        }
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+
+    private static String truncate(String label) {
+        return label.length() <= 60 ? label : label.substring(0, 57) + "...";
+    }
+
+    private static String fileName(String label) {
+        final String name = label.toLowerCase(Locale.ROOT).replaceAll("[^a-z0-9]+", "-").replaceAll("(^-|-$)", "");
+        return name.isEmpty() ? "step" : name;
+    }
+}
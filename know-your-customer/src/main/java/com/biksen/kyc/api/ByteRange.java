@@ -0,0 +1,56 @@
+package com.biksen.kyc.api;
+
+/**
+ * A single byte range from an HTTP Range header ("bytes=first-last", "bytes=first-" or "bytes=-suffixLength"),
+ * resolved against the length of the resource.
+ */
+final class ByteRange {
+    /** Returned by [parse] when the header is syntactically valid but no byte of the resource falls in it. */
+    static final ByteRange UNSATISFIABLE = new ByteRange(-1, -1);
+
+    private final long first;
+    private final long last;
+
+    private ByteRange(long first, long last) {
+        this.first = first;
+        this.last = last;
+    }
+
+    long getFirst() { return first; }
+    long getLast() { return last; }
+    long getLength() { return last - first + 1; }
+
+    /**
+     * Returns the range requested by the header, [UNSATISFIABLE], or null if the whole resource should be sent: no
+     * header, a header that cannot be parsed, or a request for several ranges.
+     */
+    static ByteRange parse(String header, long length) {
+        if (header == null || !header.startsWith("bytes=") || header.indexOf(',') >= 0) {
+            return null;
+        }
+        final String spec = header.substring("bytes=".length()).trim();
+        final int dash = spec.indexOf('-');
+        if (dash < 0) {
+            return null;
+        }
+        try {
+            final String from = spec.substring(0, dash).trim();
+            final String to = spec.substring(dash + 1).trim();
+            if (from.isEmpty()) {
+                final long suffix = Long.parseLong(to);
+                if (suffix <= 0 || length == 0) {
+                    return UNSATISFIABLE;
+                }
+                return new ByteRange(Math.max(0, length - suffix), length - 1);
+            }
+            final long first = Long.parseLong(from);
+            final long last = to.isEmpty() ? length - 1 : Math.min(Long.parseLong(to), length - 1);
+            if (first < 0 || last < first) {
+                return first >= length ? UNSATISFIABLE : null;
+            }
+            return new ByteRange(first, last);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
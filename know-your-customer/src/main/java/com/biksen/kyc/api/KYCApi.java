@@ -3,25 +3,53 @@ package com.biksen.kyc.api;
 import static java.util.Collections.singletonMap;
 import static java.util.stream.Collectors.toList;
 
-import java.io.File;
-import java.io.FileOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
 import java.io.InputStream;
-import java.net.URL;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Base64;
 import java.util.Collections;
-import java.util.Comparator;
+import java.util.Date;
+import java.util.Deque;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 
+import javax.ws.rs.Consumes;
 import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
 import javax.ws.rs.PUT;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 
 import kotlin.Pair;
 import net.corda.core.contracts.ContractState;
@@ -29,22 +57,75 @@ import net.corda.core.contracts.StateAndRef;
 import net.corda.core.crypto.Party;
 import net.corda.core.crypto.SecureHash;
 import net.corda.core.messaging.CordaRPCOps;
-import net.corda.core.node.services.Vault.Update;
+import net.corda.core.messaging.FlowHandle;
+import rx.Observable;
+import rx.Scheduler;
+import rx.Subscription;
+import rx.schedulers.Schedulers;
+import rx.subscriptions.CompositeSubscription;
 
+import org.glassfish.jersey.server.ChunkedOutput;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import com.biksen.kyc.attachment.AttachmentRegistry;
+import com.biksen.kyc.attachment.AttachmentStore;
 import com.biksen.kyc.contract.KYCContract;
 import com.biksen.kyc.contract.KYCState;
 import com.biksen.kyc.flow.KYCFlow;
+import com.biksen.kyc.flow.KYCFlowMetrics;
+import com.biksen.kyc.model.BulkKYCRecord;
 import com.biksen.kyc.model.KYC;
+import com.biksen.kyc.service.AttachmentRecipientService;
+import com.biksen.kyc.service.KYCExpirySweeper;
+import com.biksen.kyc.service.KYCFlowTracker;
+import com.biksen.kyc.service.KYCReadModel;
 
 // This API is accessible from /api/kyc. All paths specified below are relative to it.
 @Path("kyc")
 public class KYCApi {
+    private static final ObjectMapper JSON = new ObjectMapper()
+            .setDateFormat(utcDateFormat())
+            .configure(JsonGenerator.Feature.AUTO_CLOSE_TARGET, false);
+
+    private static final int DEFAULT_BULK_BATCH_SIZE = Integer.getInteger("kyc.bulk.batchSize", 100);
+    private static final int MAX_BULK_BATCH_SIZE = 1000;
+    private static final int MAX_BULK_BATCHES_IN_FLIGHT = 4;
+    private static final int MAX_PENDING_EXPIRY_BATCHES = 64;
+    private static final long EVENT_KEEP_ALIVE_SECONDS = 30;
+    private static final int MAX_EXPIRY_SUBSCRIBERS = Integer.getInteger("kyc.expiry.maxSubscribers", 16);
+    private static final int MAX_FLOW_EVENT_SUBSCRIBERS = Integer.getInteger("kyc.flowEvents.maxSubscribers", 16);
+    // Writes flow events to their streams, so neither a web server thread nor the thread publishing the events waits
+    // on a client.
+    private static final Scheduler FLOW_EVENT_WRITERS = Schedulers.from(Executors.newFixedThreadPool(2, runnable -> {
+        final Thread thread = new Thread(runnable, "kyc-flow-events");
+        thread.setDaemon(true);
+        return thread;
+    }));
+
     private final CordaRPCOps services;
     private final String myLegalName;
+    private final KYCReadModel readModel;
+    private final KYCExpirySweeper expirySweeper;
+    private final KYCFlowTracker flowTracker = new KYCFlowTracker();
+    private final AttachmentRegistry attachmentRegistry;
+    // Each expiry event stream holds a web server thread for as long as its client stays connected.
+    private final Semaphore expirySubscribers = new Semaphore(MAX_EXPIRY_SUBSCRIBERS);
+    private final Semaphore flowEventSubscribers = new Semaphore(MAX_FLOW_EVENT_SUBSCRIBERS);
 
-    public KYCApi(CordaRPCOps services) {
+    public KYCApi(CordaRPCOps services, KYCReadModel readModel, KYCExpirySweeper expirySweeper) {
         this.services = services;
         this.myLegalName = services.nodeIdentity().getLegalIdentity().getName();
+        this.readModel = readModel;
+        this.expirySweeper = expirySweeper;
+        this.attachmentRegistry = new AttachmentRegistry(services);
+    }
+
+    private static DateFormat utcDateFormat() {
+        final DateFormat format = new SimpleDateFormat("yyyy-MM-dd");
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return format;
     }
 
     /*
@@ -76,15 +157,163 @@ public class KYCApi {
     }
     
     /*
-     * Returns all kycs
+     * Returns one page of kycs, optionally filtered and sorted. Pass the returned "nextCursor" back as "cursor" to
+     * fetch the following page; it is null on the last page.
      * GET Request::
-     * http://localhost:10007/api/kyc/get-kycs
+     * http://localhost:10007/api/kyc/get-kycs?limit=50&sort=kycDate&order=desc
+     * http://localhost:10007/api/kyc/get-kycs?counterparty=HDFC&expiresFrom=2017-03-01&expiresTo=2017-03-31&cursor=<cursor>
+     *
+     * Filters: userId, docId, counterparty, kycDateFrom/kycDateTo, expiresFrom/expiresTo (kycValidDate), all dates YYYY-MM-DD.
+     * Sort keys: kycDate (default), kycValidDate, userId, kycId, docId; order asc (default) or desc.
      */
     @GET
     @Path("get-kycs")
     @Produces(MediaType.APPLICATION_JSON)
-    public List<StateAndRef<ContractState>> getKYCs() {
-        return services.vaultAndUpdates().getFirst();
+    public Response getKYCs(@QueryParam("userId") String userId,
+                            @QueryParam("kycDateFrom") String kycDateFrom,
+                            @QueryParam("kycDateTo") String kycDateTo,
+                            @QueryParam("expiresFrom") String expiresFrom,
+                            @QueryParam("expiresTo") String expiresTo,
+                            @QueryParam("docId") String docId,
+                            @QueryParam("counterparty") String counterparty,
+                            @QueryParam("sort") String sort,
+                            @QueryParam("order") String order,
+                            @QueryParam("limit") Integer limit,
+                            @QueryParam("cursor") String cursor) {
+        final KYCQuery.Page page;
+        try {
+            final KYCQuery query = new KYCQuery(userId, kycDateFrom, kycDateTo, expiresFrom, expiresTo,
+                    docId, counterparty, sort, order, limit, cursor);
+            page = query.page(readModel);
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            return Response.status(Response.Status.BAD_REQUEST).entity(e.getMessage()).build();
+        }
+
+        final StreamingOutput body = out -> {
+            try (JsonGenerator json = JSON.getFactory().createGenerator(out)) {
+                json.writeStartObject();
+                json.writeArrayFieldStart("items");
+                for (KYCQuery.Row row : page.getRows()) {
+                    writeItem(json, row.getRef(), row.getState());
+                }
+                json.writeEndArray();
+                json.writeStringField("nextCursor", page.getNextCursor());
+                json.writeEndObject();
+            }
+        };
+        return Response.ok(body, MediaType.APPLICATION_JSON).build();
+    }
+
+    private static void writeItem(JsonGenerator json, String ref, KYCState state) throws IOException {
+        json.writeStartObject();
+        json.writeStringField("ref", ref);
+        json.writeStringField("buyer", state.getBuyer().getName());
+        json.writeStringField("seller", state.getSeller().getName());
+        json.writeObjectField("kyc", state.getKYC());
+        json.writeEndObject();
+    }
+
+    /*
+     * Returns the kycs whose kycValidDate falls within the next N days (default: the re-KYC horizon), soonest first.
+     * GET Request::
+     * http://localhost:10007/api/kyc/expiring?days=30
+     */
+    @GET
+    @Path("expiring")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getExpiring(@QueryParam("days") Integer days) {
+        if (days != null && days < 0) {
+            return Response.status(Response.Status.BAD_REQUEST).entity("days must not be negative").build();
+        }
+        final Iterable<StateAndRef<ContractState>> expiring =
+                readModel.expiringWithin(days == null ? expirySweeper.getHorizonDays() : days);
+        final StreamingOutput body = out -> {
+            try (JsonGenerator json = JSON.getFactory().createGenerator(out)) {
+                json.writeStartObject();
+                json.writeArrayFieldStart("items");
+                for (StateAndRef<ContractState> stateAndRef : expiring) {
+                    writeItem(json, stateAndRef.getRef().toString(), (KYCState) stateAndRef.getState().getData());
+                }
+                json.writeEndArray();
+                json.writeEndObject();
+            }
+        };
+        return Response.ok(body, MediaType.APPLICATION_JSON).build();
+    }
+
+    /*
+     * Streams the batches published by the re-KYC sweep as server-sent "expiring" events, each holding the kycs that
+     * have newly entered the horizon. Only batches published after connecting are sent. A client that falls more than
+     * MAX_PENDING_EXPIRY_BATCHES batches behind gets an "error" event and the stream ends, rather than batches being
+     * dropped silently. At most kyc.expiry.maxSubscribers streams are served at once; beyond that the answer is 503.
+     * GET Request::
+     * http://localhost:10007/api/kyc/expiring/events
+     */
+    @GET
+    @Path("expiring/events")
+    @Produces("text/event-stream")
+    public Response getExpiringEvents() {
+        if (!expirySubscribers.tryAcquire()) {
+            return Response.status(Response.Status.SERVICE_UNAVAILABLE).entity("Too many expiry event subscribers.").build();
+        }
+        final StreamingOutput body = out -> {
+            final BlockingQueue<KYCExpirySweeper.Batch> pending = new LinkedBlockingQueue<>(MAX_PENDING_EXPIRY_BATCHES);
+            final AtomicBoolean overflowed = new AtomicBoolean();
+            final AtomicBoolean completed = new AtomicBoolean();
+            final Subscription subscription = expirySweeper.getBatches().subscribe(
+                    batch -> {
+                        if (!pending.offer(batch)) {
+                            overflowed.set(true);
+                        }
+                    },
+                    error -> completed.set(true),
+                    () -> completed.set(true));
+            try {
+                final Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+                while (true) {
+                    // Once a batch has been lost, send what is queued and then end the stream.
+                    final boolean ending = overflowed.get() || completed.get();
+                    final KYCExpirySweeper.Batch batch = ending ? pending.poll() : pending.poll(EVENT_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS);
+                    if (batch == null && overflowed.get()) {
+                        writer.write("event: error\n");
+                        writer.write("data: " + JSON.writeValueAsString(singletonMap("error",
+                                "More than " + MAX_PENDING_EXPIRY_BATCHES + " batches pending; reconnect and re-read expiring kycs.")) + "\n\n");
+                        writer.flush();
+                        return;
+                    }
+                    if (batch == null && ending) {
+                        return;
+                    }
+                    if (batch == null) {
+                        // Also how a closed connection is noticed between sweeps.
+                        writer.write(": keep-alive\n\n");
+                    } else {
+                        writer.write("event: expiring\n");
+                        writer.write("data: ");
+                        writer.flush();
+                        try (JsonGenerator json = JSON.getFactory().createGenerator(out)) {
+                            json.writeStartObject();
+                            json.writeObjectField("sweptAt", new Date(batch.getSweptAt()));
+                            json.writeNumberField("horizonDays", batch.getHorizonDays());
+                            json.writeArrayFieldStart("items");
+                            for (StateAndRef<ContractState> stateAndRef : batch.getStates()) {
+                                writeItem(json, stateAndRef.getRef().toString(), (KYCState) stateAndRef.getState().getData());
+                            }
+                            json.writeEndArray();
+                            json.writeEndObject();
+                        }
+                        writer.write("\n\n");
+                    }
+                    writer.flush();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                subscription.unsubscribe();
+                expirySubscribers.release();
+            }
+        };
+        return Response.ok(body).header("Cache-Control", "no-cache").build();
     }
 
     /*
@@ -96,30 +325,258 @@ public class KYCApi {
     @Path("{userId}/get-kycs-by-userid")
     @Produces(MediaType.APPLICATION_JSON)
     public List<KYC> getKYCsByUserId(@PathParam("userId") String userId) {
-    	
-    	List<KYC> returnRecords = new ArrayList<KYC>();
-    	
-    	List<StateAndRef<ContractState>> allRecords = services.vaultAndUpdates().getFirst();
-    	
-    	for(int i=0; i<allRecords.size();i++){
-    		
-    		StateAndRef<ContractState> singleRecord = (StateAndRef<ContractState>) allRecords.get(i);   		
-    		
-    		KYCState state = (KYCState) singleRecord.getState().getData();
-    		
-    		if(state.getKYC().getUserId().equalsIgnoreCase(userId)){
-    			returnRecords.add(state.getKYC());
-    		}
-    	}
     	// return only one record based on kycDate which is created last
-    	KYC lastKYC = Collections.max(returnRecords, Comparator.comparing(KYC::getKycDate));
+    	final KYC lastKYC = readModel.latestForUser(userId);
     	
-    	returnRecords.clear();
-    	returnRecords.add(lastKYC);
-    	
-        return returnRecords;
+        return lastKYC == null ? Collections.<KYC>emptyList() : Collections.singletonList(lastKYC);
+    }
+
+    /*
+     * Returns the kycs recorded under the given kyc id
+     * GET Request::
+     * http://localhost:10007/api/kyc/<kyc_id>/get-kycs-by-kycid
+     */
+    @GET
+    @Path("{kycId}/get-kycs-by-kycid")
+    @Produces(MediaType.APPLICATION_JSON)
+    public List<KYC> getKYCsByKycId(@PathParam("kycId") int kycId) {
+        return readModel.forKycId(kycId)
+                .stream()
+                .map(stateAndRef -> ((KYCState) stateAndRef.getState().getData()).getKYC())
+                .collect(toList());
+    }
+
+    /*
+     * Returns the size of the kyc read model and how far it lags behind the vault.
+     * GET Request::
+     * http://localhost:10007/api/kyc/read-model/stats
+     */
+    @GET
+    @Path("read-model/stats")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Map<String, Object> getReadModelStats() {
+        return readModel.getStats();
+    }
+
+    /*
+     * Returns how many attachments of recorded transactions have been copied into the local content-addressed store,
+     * how fast, and how many are waiting.
+     * GET Request::
+     * http://localhost:10007/api/kyc/attachments/received/stats
+     */
+    @GET
+    @Path("attachments/received/stats")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getReceivedAttachmentStats() {
+        final AttachmentRecipientService recipient = AttachmentRecipientService.forNode(myLegalName);
+        if (recipient == null) {
+            return Response.status(Response.Status.SERVICE_UNAVAILABLE).build();
+        }
+        return Response.ok(recipient.getStats()).build();
+    }
+
+    /*
+     * Returns the time KYC flows spend in each progress step, overall and per counterparty, in milliseconds.
+     * Metrics are named "<flow>.<node>[.<counterparty>].<step>"; pass a prefix to narrow them down, e.g. one flow on
+     * this node or one counterparty of it.
+     * GET Request::
+     * http://localhost:10007/api/kyc/metrics/flows?prefix=KYCFlow.Acceptor.HDFC.ICICI
+     */
+    @GET
+    @Path("metrics/flows")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Map<String, Object> getFlowMetrics(@QueryParam("prefix") String prefix) {
+        return KYCFlowMetrics.snapshot(prefix);
     }
     
+    /*
+     * Streams a document bundle (the raw request body) straight into the node's attachment store and returns its
+     * SHA-256, computed in the same pass. If the client sends the expected hash in the X-Attachment-SHA256 header and
+     * the node already holds that attachment, the body is not read at all.
+     * PUT Request::
+     * curl -T R-3083.zip -H "Content-Type: application/octet-stream" http://localhost:10005/api/kyc/attachments
+     */
+    @PUT
+    @Path("attachments")
+    @Consumes({MediaType.APPLICATION_OCTET_STREAM, "application/zip"})
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response uploadAttachment(InputStream body, @HeaderParam("X-Attachment-SHA256") String expectedHash) {
+        try {
+            final SecureHash expected = expectedHash == null ? null : SecureHash.Companion.parse(expectedHash);
+            final AttachmentRegistry.Upload upload = attachmentRegistry.upload(body, expected);
+            return Response
+                    .status(upload.isStored() ? Response.Status.CREATED : Response.Status.OK)
+                    .entity(singletonMap("hash", upload.getHash().toString()))
+                    .build();
+        } catch (Exception e) {
+            return Response.status(Response.Status.BAD_REQUEST).entity(e.getMessage()).build();
+        }
+    }
+
+    /*
+     * Returns the hit and miss counters of the attachment registry.
+     * GET Request::
+     * http://localhost:10005/api/kyc/attachments/stats
+     */
+    @GET
+    @Path("attachments/stats")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Map<String, Object> getAttachmentStats() {
+        final Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("hits", attachmentRegistry.getHits());
+        stats.put("misses", attachmentRegistry.getMisses());
+        stats.put("uploads", attachmentRegistry.getUploads());
+        stats.put("cached", attachmentRegistry.getSize());
+        return stats;
+    }
+
+    /*
+     * Streams an attachment from the node's attachment store. Supports a single byte range ("Range: bytes=0-1023")
+     * and conditional requests on the ETag, which is the attachment's SHA-256.
+     * GET Request::
+     * curl -o bundle.zip http://localhost:10005/api/kyc/attachments/<SHA-256>
+     */
+    @GET
+    @Path("attachments/{hash}")
+    @Produces(MediaType.APPLICATION_OCTET_STREAM)
+    public Response downloadAttachment(@PathParam("hash") String hashValue,
+                                       @HeaderParam("Range") String range,
+                                       @HeaderParam("If-Range") String ifRange,
+                                       @HeaderParam("If-None-Match") String ifNoneMatch) throws IOException {
+        final Response missing = attachmentUnavailable(hashValue);
+        if (missing != null) {
+            return missing;
+        }
+        final SecureHash hash = SecureHash.Companion.parse(hashValue);
+        final java.nio.file.Path file = AttachmentStore.pathOf(AttachmentStore.storePath(myLegalName), hash);
+        final String etag = "\"" + hash + "\"";
+        if (etag.equals(ifNoneMatch) || "*".equals(ifNoneMatch)) {
+            return Response.notModified().header(HttpHeaders.ETAG, etag).build();
+        }
+
+        final long size = Files.size(file);
+        final ByteRange requested = ifRange == null || etag.equals(ifRange) ? ByteRange.parse(range, size) : null;
+        if (requested == ByteRange.UNSATISFIABLE) {
+            return Response.status(416)
+                    .header("Content-Range", "bytes */" + size)
+                    .header(HttpHeaders.ETAG, etag)
+                    .build();
+        }
+
+        final Response.ResponseBuilder response;
+        if (requested == null) {
+            response = Response.ok(fileRegion(file, 0, size))
+                    .header(HttpHeaders.CONTENT_LENGTH, size);
+        } else {
+            response = Response.status(206)
+                    .entity(fileRegion(file, requested.getFirst(), requested.getLength()))
+                    .header("Content-Range", "bytes " + requested.getFirst() + "-" + requested.getLast() + "/" + size)
+                    .header(HttpHeaders.CONTENT_LENGTH, requested.getLength());
+        }
+        return response
+                .type(MediaType.APPLICATION_OCTET_STREAM_TYPE)
+                .header(HttpHeaders.ETAG, etag)
+                .header("Accept-Ranges", "bytes")
+                // Content-addressed, so a response for a given hash never changes.
+                .header(HttpHeaders.CACHE_CONTROL, "private, max-age=31536000, immutable")
+                .header("Content-Disposition", "attachment; filename=\"" + hash + ".zip\"")
+                .build();
+    }
+
+    /*
+     * Lists the files inside a zip (or jar) attachment, read from the zip's central directory only.
+     * GET Request::
+     * http://localhost:10005/api/kyc/attachments/<SHA-256>/entries
+     */
+    @GET
+    @Path("attachments/{hash}/entries")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response listAttachmentEntries(@PathParam("hash") String hashValue) {
+        final Response missing = attachmentUnavailable(hashValue);
+        if (missing != null) {
+            return missing;
+        }
+        final SecureHash hash = SecureHash.Companion.parse(hashValue);
+        final java.nio.file.Path file = AttachmentStore.pathOf(AttachmentStore.storePath(myLegalName), hash);
+        try (ZipFile zip = new ZipFile(file.toFile())) {
+            final List<Map<String, Object>> entries = new ArrayList<>(zip.size());
+            final Enumeration<? extends ZipEntry> iterator = zip.entries();
+            while (iterator.hasMoreElements()) {
+                final ZipEntry entry = iterator.nextElement();
+                final Map<String, Object> item = new LinkedHashMap<>();
+                item.put("name", entry.getName());
+                item.put("directory", entry.isDirectory());
+                item.put("size", entry.getSize());
+                item.put("compressedSize", entry.getCompressedSize());
+                item.put("lastModified", entry.getTime() < 0 ? null : Instant.ofEpochMilli(entry.getTime()).toString());
+                entries.add(item);
+            }
+            return Response.ok(singletonMap("entries", entries))
+                    .header(HttpHeaders.ETAG, "\"" + hash + "-entries\"")
+                    .build();
+        } catch (IOException e) {
+            return Response.status(Response.Status.BAD_REQUEST).entity("Attachment is not a zip file: " + e.getMessage()).build();
+        }
+    }
+
+    /**
+     * Returns the error response for an attachment that cannot be served from the local store, or null if it can.
+     */
+    private Response attachmentUnavailable(String hashValue) {
+        final java.nio.file.Path store = AttachmentStore.storePath(myLegalName);
+        if (store == null) {
+            return Response.status(Response.Status.SERVICE_UNAVAILABLE).entity("The attachment store is not available.").build();
+        }
+        final SecureHash hash;
+        try {
+            hash = SecureHash.Companion.parse(hashValue);
+        } catch (IllegalArgumentException e) {
+            return Response.status(Response.Status.BAD_REQUEST).entity("Malformed attachment hash: " + hashValue).build();
+        }
+        if (AttachmentStore.pathOf(store, hash) == null) {
+            return Response.status(Response.Status.NOT_FOUND).build();
+        }
+        return null;
+    }
+
+    /**
+     * Writes [length] bytes of the file from [first] onwards with FileChannel.transferTo, so the content is copied in
+     * bounded chunks and never held in memory as a whole.
+     */
+    private static StreamingOutput fileRegion(java.nio.file.Path file, long first, long length) {
+        return out -> {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                final WritableByteChannel target = Channels.newChannel(out);
+                long position = first;
+                long remaining = length;
+                while (remaining > 0) {
+                    final long sent = channel.transferTo(position, remaining, target);
+                    if (sent <= 0) {
+                        throw new EOFException("Attachment " + file.getFileName() + " ended early.");
+                    }
+                    position += sent;
+                    remaining -= sent;
+                }
+            }
+        };
+    }
+
+    /**
+     * Resolves the attachment hash given to the create-kyc-with-attachment endpoints, or returns null if it is
+     * malformed or the node does not hold that attachment.
+     */
+    private SecureHash.SHA256 knownAttachment(String attachmentHash) {
+        if (attachmentHash == null) {
+            return null;
+        }
+        try {
+            final SecureHash.SHA256 hash = SecureHash.Companion.parse(attachmentHash);
+            return attachmentRegistry.contains(hash) ? hash : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
     /*
      * Single party
      * http://localhost:10005/api/kyc/<HDFC>/create-kyc
@@ -132,14 +589,10 @@ public class KYCApi {
    @Path("{party1}/create-kyc")
    public Response createKYC(KYC kyc, @PathParam("party1") String partyName1) throws InterruptedException, ExecutionException {
        final Party otherParty = services.partyFromName(partyName1);      
-       
-       System.out.println("Party1............"+otherParty);       
 
        if (otherParty == null) {
            return Response.status(Response.Status.BAD_REQUEST).build();
        }
-       
-       System.out.println("Request received............"+kyc);
 
        final KYCState state = new KYCState(
                kyc,
@@ -167,31 +620,104 @@ public class KYCApi {
                .build();
    }
    
+    /*
+     * Bulk onboarding. Records are grouped by counterparty and each group is issued in transactions of up to
+     * "batchSize" kycs (default: the "kyc.bulk.batchSize" system property, else 100). Returns one result per record,
+     * in request order.
+     * PUT Request::
+     * http://localhost:10005/api/kyc/create-kycs?batchSize=200
+       [
+           {"counterparty": "HDFC", "kyc": {"kycId": 111, "userId": "biksen", "userName": "Jiya Sen", "kycDate": "2017-02-09", "kycValidDate": "2019-09-15", "docId": "A001"}}
+       ]
+     */
+    @PUT
+    @Path("create-kycs")
+    @Produces(MediaType.APPLICATION_JSON)
+    public List<Map<String, Object>> createKYCs(List<BulkKYCRecord> records, @QueryParam("batchSize") Integer batchSize) {
+        final int size = batchSize == null ? DEFAULT_BULK_BATCH_SIZE : Math.max(1, Math.min(batchSize, MAX_BULK_BATCH_SIZE));
+        final Party me = services.nodeIdentity().getLegalIdentity();
+        final List<Map<String, Object>> results = new ArrayList<>(records.size());
+        final Map<Party, List<Integer>> byCounterparty = new LinkedHashMap<>();
+
+        for (int i = 0; i < records.size(); i++) {
+            final BulkKYCRecord record = records.get(i);
+            final Map<String, Object> result = new LinkedHashMap<>();
+            result.put("index", i);
+            results.add(result);
+            if (record == null || record.getKyc() == null || record.getCounterparty() == null) {
+                complete(result, "FAILED", "Missing kyc or counterparty.");
+                continue;
+            }
+            result.put("counterparty", record.getCounterparty());
+            result.put("kycId", record.getKyc().getKycId());
+            result.put("userId", record.getKyc().getUserId());
+
+            final Party otherParty = services.partyFromName(record.getCounterparty());
+            if (otherParty == null) {
+                complete(result, "FAILED", "Unknown counterparty.");
+                continue;
+            }
+            byCounterparty.computeIfAbsent(otherParty, party -> new ArrayList<>()).add(i);
+        }
+
+        // Keep a bounded number of batch flows running at once and collect results oldest first.
+        final Deque<Pair<FlowHandle<KYCFlow.KYCFlowResult>, List<Integer>>> inFlight = new ArrayDeque<>();
+        for (Map.Entry<Party, List<Integer>> group : byCounterparty.entrySet()) {
+            final List<Integer> indices = group.getValue();
+            for (int from = 0; from < indices.size(); from += size) {
+                final List<Integer> batch = indices.subList(from, Math.min(from + size, indices.size()));
+                final ArrayList<KYCState> states = new ArrayList<>(batch.size());
+                for (int index : batch) {
+                    states.add(new KYCState(records.get(index).getKyc(), me, group.getKey(), new KYCContract()));
+                }
+                if (inFlight.size() == MAX_BULK_BATCHES_IN_FLIGHT) {
+                    awaitBatch(inFlight.poll(), results);
+                }
+                inFlight.add(new Pair<>(services.startFlowDynamic(KYCFlow.BatchInitiator.class, states, group.getKey()), batch));
+            }
+        }
+        while (!inFlight.isEmpty()) {
+            awaitBatch(inFlight.poll(), results);
+        }
+        return results;
+    }
+
+    private static void awaitBatch(Pair<FlowHandle<KYCFlow.KYCFlowResult>, List<Integer>> batch, List<Map<String, Object>> results) {
+        String status;
+        String message;
+        try {
+            final KYCFlow.KYCFlowResult result = batch.getFirst().getReturnValue().toBlocking().first();
+            status = result instanceof KYCFlow.KYCFlowResult.Success ? "CREATED" : "FAILED";
+            message = result.toString();
+        } catch (RuntimeException e) {
+            status = "FAILED";
+            message = String.format("Failure(%s)", e.getMessage());
+        }
+        for (int index : batch.getSecond()) {
+            complete(results.get(index), status, message);
+        }
+    }
+
+    private static void complete(Map<String, Object> result, String status, String message) {
+        result.put("status", status);
+        result.put("message", message);
+    }
+
+   /*
+    * Upload the document bundle through the attachments end-point first, then pass its hash here.
+    * PUT Request::
+    * http://localhost:10005/api/kyc/<HDFC>/create-kyc-with-attachment?attachment=<SHA-256>
+    */
    @PUT
    @Path("{otherParty}/create-kyc-with-attachment")
-   public Response createKYCWithAttachment(KYC kyc, @PathParam("otherParty") String otherPartyName) throws InterruptedException, ExecutionException {
-	   
-	   /** Get vault update status - tracker */
-	   Pair<List<StateAndRef<ContractState>>, rx.Observable<Update>> tr =services.vaultAndUpdates();
-	   rx.Observable<Update> status1 = tr.component2();
-	   status1.subscribe(s -> System.out.println(s));
-	   /*status1.just("Hello Jiya, world!")
-	   .map(s -> s + " -Dan")
-	   .map(s -> s.hashCode())
-	   .map(i -> Integer.toString(i))
-	   //.subscribe(testSubscriber);
-	   .subscribe(s -> System.out.println(s)); // -*/
-	   /** End tracker */
+   public Response createKYCWithAttachment(KYC kyc, @PathParam("otherParty") String otherPartyName,
+                                           @QueryParam("attachment") String attachmentHash) throws InterruptedException, ExecutionException {
 	   
        final Party otherParty = services.partyFromName(otherPartyName);      
-       
-       System.out.println("Party1............"+otherParty);       
 
        if (otherParty == null) {
            return Response.status(Response.Status.BAD_REQUEST).build();
        }
-       
-       System.out.println("Request received............"+kyc);
 
        final KYCState state = new KYCState(
                kyc,
@@ -199,36 +725,10 @@ public class KYCApi {
                otherParty,
                new KYCContract());
        
-      /** Add attachment - Added attachment logic into KYCFlow.java */
-       /** Read file directly from src/main/resources location */
-       //InputStream in = Thread.currentThread().getContextClassLoader().getResourceAsStream("R-3083.zip");       
-              
-       String filePath = new File("").getAbsolutePath() + File.separator + kyc.getUserId() +"_kyc.zip";       
-      
-       System.out.println("Jiys's filePath......"+ filePath);
-       InputStream in = null;
-       try{
-    	   byte[] bytes = "Hello, World!".getBytes("UTF-8");
-    	   String encoded = Base64.getEncoder().encodeToString(bytes);
-    	   byte[] decoded = Base64.getDecoder().decode(encoded);   	       	   
-    	   FileOutputStream fop = new FileOutputStream(filePath);
-
-    	   fop.write(decoded);
-    	   fop.flush();
-    	   fop.close();
-    	  
-           URL newFileURL = new File(filePath).toURI().toURL();
-           //java.io.BufferedInputStream will be created by openStream()
-           in = newFileURL.openStream();
-           
-       }catch(Exception e){
-    	   e.printStackTrace();
+       final SecureHash attachmentHashValue = knownAttachment(attachmentHash);
+       if (attachmentHashValue == null) {
+           return Response.status(Response.Status.BAD_REQUEST).entity("Unknown attachment: " + attachmentHash).build();
        }
-       
-       System.out.println("File input stream created....."+in);    
-       
-       SecureHash attachmentHashValue =  services.uploadAttachment(in);       
-       /** End attachment */
 
        // Initiate flow here. The line below blocks and waits for the flow to return.
        final KYCFlow.KYCFlowResult result = services
@@ -250,5 +750,147 @@ public class KYCApi {
                .build();
    }
 
-   
+
+    /*
+     * Same as create-kyc, but returns 202 Accepted with the flow id as soon as the flow has been started instead of
+     * waiting for it to finish. Poll flows/<flowId> for its progress and result.
+     * PUT Request::
+     * http://localhost:10005/api/kyc/<HDFC>/create-kyc-async
+     */
+    @PUT
+    @Path("{party1}/create-kyc-async")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response createKYCAsync(KYC kyc, @PathParam("party1") String partyName1) {
+        final Party otherParty = services.partyFromName(partyName1);
+        if (otherParty == null) {
+            return Response.status(Response.Status.BAD_REQUEST).build();
+        }
+
+        final KYCState state = new KYCState(
+                kyc,
+                services.nodeIdentity().getLegalIdentity(),
+                otherParty,
+                new KYCContract());
+
+        return accepted(flowTracker.track(
+                services.startFlowDynamic(KYCFlow.Initiator.class, state, otherParty), partyName1));
+    }
+
+    /*
+     * Same as create-kyc-with-attachment, but returns 202 Accepted with the flow id once the flow has been started.
+     * PUT Request::
+     * http://localhost:10005/api/kyc/<HDFC>/create-kyc-with-attachment-async?attachment=<SHA-256>
+     */
+    @PUT
+    @Path("{otherParty}/create-kyc-with-attachment-async")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response createKYCWithAttachmentAsync(KYC kyc, @PathParam("otherParty") String otherPartyName,
+                                                 @QueryParam("attachment") String attachmentHash) {
+        final Party otherParty = services.partyFromName(otherPartyName);
+        if (otherParty == null) {
+            return Response.status(Response.Status.BAD_REQUEST).build();
+        }
+
+        final KYCState state = new KYCState(
+                kyc,
+                services.nodeIdentity().getLegalIdentity(),
+                otherParty,
+                new KYCContract());
+        final SecureHash attachmentHashValue = knownAttachment(attachmentHash);
+       if (attachmentHashValue == null) {
+           return Response.status(Response.Status.BAD_REQUEST).entity("Unknown attachment: " + attachmentHash).build();
+       }
+
+        return accepted(flowTracker.track(
+                services.startFlowDynamic(KYCFlow.Initiator.class, state, otherParty, attachmentHashValue), otherPartyName));
+    }
+
+    /*
+     * Returns the current progress step of a flow started through one of the async endpoints and, once it has
+     * finished, its result.
+     * GET Request::
+     * http://localhost:10005/api/kyc/flows/<flowId>
+     */
+    @GET
+    @Path("flows/{flowId}")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getFlowStatus(@PathParam("flowId") String flowId) {
+        final KYCFlowTracker.TrackedFlow flow = flowTracker.get(flowId);
+        if (flow == null) {
+            return Response.status(Response.Status.NOT_FOUND).build();
+        }
+        return Response.ok(flow.toStatus()).build();
+    }
+
+    /*
+     * Streams the progress steps of a flow as server-sent events ("step" events, then one "result" event), replaying
+     * the steps already taken. The stream ends when the flow finishes. Each event's data is a JSON string, so
+     * multi-line results and errors stay within one data line. Events are written as they are published, without
+     * holding a web server thread; a keep-alive comment every EVENT_KEEP_ALIVE_SECONDS notices a client that has
+     * gone. At most kyc.flowEvents.maxSubscribers streams are served at once; beyond that the answer is 503.
+     * GET Request::
+     * http://localhost:10005/api/kyc/flows/<flowId>/events
+     */
+    @GET
+    @Path("flows/{flowId}/events")
+    @Produces("text/event-stream")
+    public Response getFlowEvents(@PathParam("flowId") String flowId) {
+        final KYCFlowTracker.TrackedFlow flow = flowTracker.get(flowId);
+        if (flow == null) {
+            return Response.status(Response.Status.NOT_FOUND).build();
+        }
+
+        if (!flowEventSubscribers.tryAcquire()) {
+            return Response.status(Response.Status.SERVICE_UNAVAILABLE).entity("Too many flow event subscribers.").build();
+        }
+
+        final ChunkedOutput<String> output = new ChunkedOutput<>(String.class);
+        final CompositeSubscription subscriptions = new CompositeSubscription();
+        final AtomicBoolean ended = new AtomicBoolean();
+        final Runnable end = () -> {
+            if (ended.compareAndSet(false, true)) {
+                subscriptions.unsubscribe();
+                flowEventSubscribers.release();
+                try {
+                    output.close();
+                } catch (IOException e) {
+                    // The client has gone already.
+                }
+            }
+        };
+        subscriptions.add(flow.getEvents().observeOn(FLOW_EVENT_WRITERS).subscribe(
+                event -> send(output, "event: " + event.getType() + "\ndata: " + toJson(event.getData()) + "\n\n", end),
+                error -> end.run(),
+                end::run));
+        subscriptions.add(Observable.interval(EVENT_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, FLOW_EVENT_WRITERS).subscribe(
+                tick -> send(output, ": keep-alive\n\n", end)));
+        return Response.ok(output).header("Cache-Control", "no-cache").build();
+    }
+
+    /**
+     * Writes one chunk of an event stream, and ends the stream if the client has gone.
+     */
+    private static void send(ChunkedOutput<String> output, String chunk, Runnable end) {
+        try {
+            output.write(chunk);
+        } catch (IOException e) {
+            end.run();
+        }
+    }
+
+    private static String toJson(Object value) {
+        try {
+            return JSON.writeValueAsString(value);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static Response accepted(KYCFlowTracker.TrackedFlow flow) {
+        return Response
+                .status(Response.Status.ACCEPTED)
+                .header("Location", "flows/" + flow.getFlowId())
+                .entity(singletonMap("flowId", flow.getFlowId()))
+                .build();
+    }
 }
@@ -0,0 +1,267 @@
+package com.biksen.kyc.api;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.PriorityQueue;
+
+import net.corda.core.contracts.ContractState;
+import net.corda.core.contracts.StateAndRef;
+
+import com.biksen.kyc.contract.KYCState;
+import com.biksen.kyc.model.KYC;
+import com.biksen.kyc.service.KYCReadModel;
+
+/**
+ * A filtered, sorted and cursor-paginated query over KYC states.
+ *
+ * A page is selected with a bounded heap of (limit + 1) rows, so memory stays proportional to the page size however
+ * many states are scanned. Rows are ordered by the sort key and then by state ref, which makes the ordering total and
+ * lets the cursor be the (key, ref) pair of the last row returned. Each part of the cursor is Base64-encoded on its own,
+ * so keys may contain any character.
+ */
+public class KYCQuery {
+    public static final int DEFAULT_LIMIT = 50;
+    public static final int MAX_LIMIT = 500;
+
+    public enum SortKey {
+        KYC_DATE, KYC_VALID_DATE, USER_ID, KYC_ID, DOC_ID;
+
+        Comparable<?> keyOf(KYC kyc) {
+            switch (this) {
+                case KYC_DATE: return (long) kyc.getKycDateEpochDay();
+                case KYC_VALID_DATE: return (long) kyc.getKycValidDateEpochDay();
+                case USER_ID: return kyc.getUserId() == null ? "" : kyc.getUserId().toLowerCase(Locale.ROOT);
+                case KYC_ID: return (long) kyc.getKycId();
+                default: return kyc.getDocId() == null ? "" : kyc.getDocId();
+            }
+        }
+
+        Comparable<?> parseKey(String key) {
+            return this == USER_ID || this == DOC_ID ? key : Long.valueOf(key);
+        }
+
+        static SortKey parse(String name) {
+            if (name == null || name.isEmpty()) {
+                return KYC_DATE;
+            }
+            switch (name) {
+                case "kycDate": return KYC_DATE;
+                case "kycValidDate": return KYC_VALID_DATE;
+                case "userId": return USER_ID;
+                case "kycId": return KYC_ID;
+                case "docId": return DOC_ID;
+                default: throw new IllegalArgumentException("Unknown sort key: " + name);
+            }
+        }
+    }
+
+    /**
+     * A matching state together with its sort key and ref, as placed on a page.
+     */
+    public static final class Row {
+        private final Comparable<?> key;
+        private final String ref;
+        private final KYCState state;
+
+        private Row(Comparable<?> key, String ref, KYCState state) {
+            this.key = key;
+            this.ref = ref;
+            this.state = state;
+        }
+
+        public String getRef() { return ref; }
+        public KYCState getState() { return state; }
+    }
+
+    /**
+     * One page of results and the cursor to pass back for the next one (null on the last page).
+     */
+    public static final class Page {
+        private final List<Row> rows;
+        private final String nextCursor;
+
+        private Page(List<Row> rows, String nextCursor) {
+            this.rows = rows;
+            this.nextCursor = nextCursor;
+        }
+
+        public List<Row> getRows() { return rows; }
+        public String getNextCursor() { return nextCursor; }
+    }
+
+    private final String userId;
+    private final long kycDateFrom;
+    private final long kycDateTo;
+    private final long expiresFrom;
+    private final long expiresTo;
+    private final String docId;
+    private final String counterparty;
+    private final SortKey sortKey;
+    private final boolean descending;
+    private final int limit;
+    private final Comparable<?> afterKey;
+    private final String afterRef;
+    private final Comparator<Row> order;
+
+    /**
+     * All arguments are optional (null). Dates are ISO "YYYY-MM-DD" and inclusive; the expiry window applies to
+     * kycValidDate.
+     */
+    public KYCQuery(String userId, String kycDateFrom, String kycDateTo, String expiresFrom, String expiresTo,
+                    String docId, String counterparty, String sort, String order, Integer limit, String cursor) {
+        this.userId = userId;
+        this.kycDateFrom = epochDay(kycDateFrom, Long.MIN_VALUE);
+        this.kycDateTo = epochDay(kycDateTo, Long.MAX_VALUE);
+        this.expiresFrom = epochDay(expiresFrom, Long.MIN_VALUE);
+        this.expiresTo = epochDay(expiresTo, Long.MAX_VALUE);
+        this.docId = docId;
+        this.counterparty = counterparty;
+        this.sortKey = SortKey.parse(sort);
+        this.descending = "desc".equalsIgnoreCase(order);
+        this.limit = limit == null ? DEFAULT_LIMIT : Math.max(1, Math.min(limit, MAX_LIMIT));
+
+        final Comparator<Row> ascending = (a, b) -> {
+            final int byKey = compareKeys(a.key, b.key);
+            return byKey != 0 ? byKey : a.ref.compareTo(b.ref);
+        };
+        this.order = descending ? ascending.reversed() : ascending;
+
+        if (cursor == null || cursor.isEmpty()) {
+            this.afterKey = null;
+            this.afterRef = null;
+        } else {
+            final String[] parts = decodeCursor(cursor);
+            if (parts.length != 3 || !parts[0].equals(sortKey.name())) {
+                throw new IllegalArgumentException("Cursor does not belong to this sort order.");
+            }
+            this.afterKey = sortKey.parseKey(parts[1]);
+            this.afterRef = parts[2];
+        }
+    }
+
+    /**
+     * Selects the next page from the read model, scanning only the most selective projection the filters allow.
+     */
+    public Page page(KYCReadModel model) {
+        if (userId != null) {
+            return page(model.forUser(userId));
+        }
+        if (expiresFrom != Long.MIN_VALUE || expiresTo != Long.MAX_VALUE) {
+            return page(model.expiringBetween(expiresFrom, expiresTo));
+        }
+        if (counterparty != null) {
+            return page(model.forCounterparty(counterparty));
+        }
+        return page(model.all());
+    }
+
+    /**
+     * Selects the next page from the given states in a single pass.
+     */
+    public Page page(Iterable<StateAndRef<ContractState>> states) {
+        final Row after = afterKey == null ? null : new Row(afterKey, afterRef, null);
+        // Max-heap on the page order: the head is the row to evict when a better one arrives.
+        final PriorityQueue<Row> heap = new PriorityQueue<>(limit + 2, order.reversed());
+
+        for (StateAndRef<ContractState> stateAndRef : states) {
+            final ContractState data = stateAndRef.getState().getData();
+            if (!(data instanceof KYCState) || !matches((KYCState) data)) {
+                continue;
+            }
+            final KYCState state = (KYCState) data;
+            final Row row = new Row(sortKey.keyOf(state.getKYC()), stateAndRef.getRef().toString(), state);
+            if (after != null && order.compare(row, after) <= 0) {
+                continue;
+            }
+            if (heap.size() <= limit) {
+                heap.add(row);
+            } else if (order.compare(row, heap.peek()) < 0) {
+                heap.poll();
+                heap.add(row);
+            }
+        }
+
+        final boolean hasMore = heap.size() > limit;
+        if (hasMore) {
+            heap.poll();
+        }
+        final List<Row> rows = new ArrayList<>(heap);
+        Collections.sort(rows, order);
+
+        final String nextCursor = hasMore ? cursorOf(rows.get(rows.size() - 1)) : null;
+        return new Page(rows, nextCursor);
+    }
+
+    private boolean matches(KYCState state) {
+        final KYC kyc = state.getKYC();
+        if (kyc == null) {
+            return false;
+        }
+        if (userId != null && !userId.equalsIgnoreCase(kyc.getUserId())) {
+            return false;
+        }
+        if (docId != null && !docId.equals(kyc.getDocId())) {
+            return false;
+        }
+        if (!within(kyc.getKycDateEpochDay(), kycDateFrom, kycDateTo) || !within(kyc.getKycValidDateEpochDay(), expiresFrom, expiresTo)) {
+            return false;
+        }
+        return counterparty == null
+                || counterparty.equalsIgnoreCase(state.getBuyer().getName())
+                || counterparty.equalsIgnoreCase(state.getSeller().getName());
+    }
+
+    private String cursorOf(Row row) {
+        return encodeCursor(sortKey.name(), String.valueOf(row.key), row.ref);
+    }
+
+    /**
+     * Joins the parts with '.', which URL-safe Base64 never produces.
+     */
+    static String encodeCursor(String... parts) {
+        final StringBuilder cursor = new StringBuilder();
+        for (String part : parts) {
+            if (cursor.length() > 0) {
+                cursor.append('.');
+            }
+            cursor.append(Base64.getUrlEncoder().withoutPadding().encodeToString(part.getBytes(StandardCharsets.UTF_8)));
+        }
+        return cursor.toString();
+    }
+
+    /**
+     * @throws IllegalArgumentException if a part is not valid Base64.
+     */
+    static String[] decodeCursor(String cursor) {
+        final String[] parts = cursor.split("\\.", -1);
+        for (int i = 0; i < parts.length; i++) {
+            parts[i] = new String(Base64.getUrlDecoder().decode(parts[i]), StandardCharsets.UTF_8);
+        }
+        return parts;
+    }
+
+    private static boolean within(int epochDay, long from, long to) {
+        if (from == Long.MIN_VALUE && to == Long.MAX_VALUE) {
+            return true;
+        }
+        return epochDay != KYC.NO_DATE && epochDay >= from && epochDay <= to;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static int compareKeys(Comparable<?> a, Comparable<?> b) {
+        return ((Comparable<Object>) a).compareTo(b);
+    }
+
+    private static long epochDay(String date, long unbounded) {
+        if (date == null || date.isEmpty()) {
+            return unbounded;
+        }
+        return LocalDate.parse(date).toEpochDay();
+    }
+}
@@ -0,0 +1,161 @@
+package com.biksen.kyc.attachment;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.corda.core.crypto.SecureHash;
+import net.corda.core.messaging.CordaRPCOps;
+import net.corda.core.transactions.TransactionBuilder;
+
+/**
+ * Content-addressed view of the attachments a node holds, used to avoid uploading the same KYC document bundle twice.
+ *
+ * Hashes the node is known to hold are kept in a bounded LRU, so repeated checks for popular bundles do not go back
+ * to the node. Only positive answers are cached: an attachment can appear on the node but never disappears from it.
+ */
+public class AttachmentRegistry {
+    public static final int DEFAULT_CAPACITY = 10000;
+
+    private static final int DRAIN_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * The outcome of an upload: the attachment hash, and whether the bytes were new to the node.
+     */
+    public static final class Upload {
+        private final SecureHash.SHA256 hash;
+        private final boolean stored;
+
+        private Upload(SecureHash.SHA256 hash, boolean stored) {
+            this.hash = hash;
+            this.stored = stored;
+        }
+
+        public SecureHash.SHA256 getHash() { return hash; }
+        public boolean isStored() { return stored; }
+    }
+
+    private final CordaRPCOps rpc;
+    // Access-ordered, so get() refreshes an entry and the least recently used hash is evicted first.
+    private final Map<SecureHash, Boolean> known;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong uploads = new AtomicLong();
+
+    public AttachmentRegistry(CordaRPCOps rpc) {
+        this(rpc, DEFAULT_CAPACITY);
+    }
+
+    public AttachmentRegistry(CordaRPCOps rpc, int capacity) {
+        this.rpc = rpc;
+        this.known = Collections.synchronizedMap(new LinkedHashMap<SecureHash, Boolean>(16, 0.75f, true) {
+            @Override protected boolean removeEldestEntry(Map.Entry<SecureHash, Boolean> eldest) {
+                return size() > capacity;
+            }
+        });
+    }
+
+    /**
+     * Returns true if the node holds an attachment with the given hash.
+     */
+    public boolean contains(SecureHash hash) {
+        if (known.get(hash) != null) {
+            hits.incrementAndGet();
+            return true;
+        }
+        misses.incrementAndGet();
+        if (rpc.attachmentExists(hash)) {
+            known.put(hash, Boolean.TRUE);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Hashes the file locally, then uploads it unless the node already holds that hash. Nothing reaches the node
+     * unless its hash is known up front.
+     *
+     * @throws IllegalArgumentException if the file changed between hashing and uploading.
+     */
+    public Upload upload(Path file) throws IOException {
+        final SecureHash.SHA256 hash = new SecureHash.SHA256(SHA256Util.digest(file));
+        try (InputStream in = Files.newInputStream(file)) {
+            return upload(in, hash);
+        }
+    }
+
+    /**
+     * Uploads the stream to the node, hashing it on the way through, and returns its hash. If an expected hash is
+     * given and the node already holds it, the stream is not read at all.
+     *
+     * The hash can only be checked once the node has the bytes, and RPC offers no way to delete an attachment, so
+     * content that does not match the expected hash stays on the node. It is not recorded as known. Prefer
+     * [upload(Path)] where the content is a file.
+     *
+     * @throws IllegalArgumentException if the content does not match the expected hash.
+     */
+    public Upload upload(InputStream content, SecureHash expected) throws IOException {
+        if (expected != null && contains(expected)) {
+            return new Upload((SecureHash.SHA256) expected, false);
+        }
+
+        final DigestInputStream in = new DigestInputStream(content, sha256());
+        boolean stored = true;
+        try {
+            rpc.uploadAttachment(in);
+        } catch (Exception e) {
+            if (!(e instanceof FileAlreadyExistsException)) {
+                throw e;
+            }
+            // The node already holds these bytes; finish the digest so the hash can still be reported.
+            final byte[] buffer = new byte[DRAIN_BUFFER_SIZE];
+            while (in.read(buffer) != -1) { }
+            stored = false;
+        }
+
+        final SecureHash.SHA256 hash = new SecureHash.SHA256(in.getMessageDigest().digest());
+        if (stored) {
+            uploads.incrementAndGet();
+        }
+        if (expected != null && !expected.equals(hash)) {
+            throw new IllegalArgumentException(String.format("Attachment hash %s does not match the expected %s.", hash, expected));
+        }
+        known.put(hash, Boolean.TRUE);
+        return new Upload(hash, stored);
+    }
+
+    /**
+     * Adds the attachment to the transaction unless the transaction already references it.
+     *
+     * @return true if the attachment was added.
+     */
+    public static boolean addAttachment(TransactionBuilder builder, SecureHash hash) {
+        if (builder.attachments().contains(hash)) {
+            return false;
+        }
+        builder.addAttachment(hash);
+        return true;
+    }
+
+    public long getHits() { return hits.get(); }
+    public long getMisses() { return misses.get(); }
+    public long getUploads() { return uploads.get(); }
+    public int getSize() { return known.size(); }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
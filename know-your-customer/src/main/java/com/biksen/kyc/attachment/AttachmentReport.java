@@ -0,0 +1,40 @@
+package com.biksen.kyc.attachment;
+
+import net.corda.core.crypto.SecureHash;
+
+/**
+ * The verdict of [AttachmentVerifier] on one attachment: its size in bytes (-1 if unknown), how long it took to check
+ * in microseconds, and why it failed, if it did.
+ */
+public final class AttachmentReport {
+    private final String hash;
+    private final long size;
+    private final long verifyMicros;
+    private final String error;
+
+    private AttachmentReport(String hash, long size, long verifyMicros, String error) {
+        this.hash = hash;
+        this.size = size;
+        this.verifyMicros = verifyMicros;
+        this.error = error;
+    }
+
+    public static AttachmentReport verified(SecureHash hash, long size, long verifyMicros) {
+        return new AttachmentReport(hash.toString(), size, verifyMicros, null);
+    }
+
+    public static AttachmentReport failed(SecureHash hash, long size, long verifyMicros, String error) {
+        return new AttachmentReport(hash.toString(), size, verifyMicros, error == null ? "Failed." : error);
+    }
+
+    public String getHash() { return hash; }
+    public long getSize() { return size; }
+    public long getVerifyMicros() { return verifyMicros; }
+    public String getError() { return error; }
+    public boolean isVerified() { return error == null; }
+
+    @Override
+    public String toString() {
+        return String.format("%s %d bytes %d us %s", hash, size, verifyMicros, isVerified() ? "OK" : error);
+    }
+}
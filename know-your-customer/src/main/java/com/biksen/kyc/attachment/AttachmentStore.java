@@ -0,0 +1,64 @@
+package com.biksen.kyc.attachment;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import net.corda.core.crypto.SecureHash;
+import net.corda.core.node.services.AttachmentStorage;
+import net.corda.node.services.persistence.NodeAttachmentService;
+
+/**
+ * Gives read access to the files of a node's attachment store, which keeps each attachment in a file named by its
+ * hash. The node's web end-points run in the node process, so [KYCService] records each node's store location at
+ * start-up, by legal name, and the API can then stream attachments from disk rather than through RPC. Several nodes
+ * can share a JVM, as in a mock network; each sees only its own store.
+ *
+ * Only [NodeAttachmentService] keeps attachments as plain files. For any other [AttachmentStorage] there is no store
+ * directory, and callers stream the content out of the storage instead.
+ */
+public final class AttachmentStore {
+    // By node legal name.
+    private static final Map<String, Path> STORES = new ConcurrentHashMap<>();
+
+    private AttachmentStore() {}
+
+    /**
+     * Records where the named node keeps its attachment files, if its storage keeps them as files at all.
+     */
+    public static void register(String legalName, AttachmentStorage storage) {
+        final Path path = storePath(storage);
+        if (path != null) {
+            STORES.put(legalName, path);
+        } else {
+            STORES.remove(legalName);
+        }
+    }
+
+    /**
+     * Returns the directory of the named node's attachment store, or null if it has not been recorded in this process.
+     */
+    public static Path storePath(String legalName) {
+        return STORES.get(legalName);
+    }
+
+    /**
+     * Returns the directory the storage keeps its files in, or null if it does not keep attachments as plain files.
+     */
+    public static Path storePath(AttachmentStorage storage) {
+        return storage instanceof NodeAttachmentService ? ((NodeAttachmentService) storage).getStorePath() : null;
+    }
+
+    /**
+     * Returns the file holding the attachment in the given store directory, or null if there is no such store or
+     * the node does not hold it.
+     */
+    public static Path pathOf(Path store, SecureHash hash) {
+        if (store == null) {
+            return null;
+        }
+        final Path file = store.resolve(hash.toString());
+        return Files.isRegularFile(file) ? file : null;
+    }
+}
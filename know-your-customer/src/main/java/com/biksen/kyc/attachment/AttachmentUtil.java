@@ -2,53 +2,43 @@ package com.biksen.kyc.attachment;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.lang.reflect.Constructor;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Set;
 
-import net.corda.core.contracts.TransactionType;
 import net.corda.core.crypto.Party;
 import net.corda.core.crypto.SecureHash;
 import net.corda.core.messaging.CordaRPCOps;
 import net.corda.core.transactions.SignedTransaction;
-import net.corda.core.transactions.TransactionBuilder;
 import net.corda.core.transactions.WireTransaction;
 import net.corda.core.utilities.Emoji;
-import net.corda.node.services.config.ConfigUtilities;
-import net.corda.node.services.messaging.CordaRPCClient;
-
-import org.apache.activemq.artemis.api.core.ActiveMQException;
 
 import rx.Observable;
 
+import com.biksen.kyc.client.KYCRPCClientPool;
 import com.biksen.kyc.flow.AttachmentFlow;
-import com.google.common.collect.ImmutableSet;
 import com.google.common.net.HostAndPort;
 
 public class AttachmentUtil {
 	
-	public static void main(String args[]) throws ActiveMQException, IOException{		
+	public static void main(String args[]) throws IOException, InterruptedException{		
 		
 		if(args[0].equalsIgnoreCase("RECIPIENT"))
 		{
 			final HostAndPort nodeAddress = HostAndPort.fromString("localhost:10006");
 			System.out.println("Connecting to the recipient node "+ nodeAddress);
-			final CordaRPCClient client = new CordaRPCClient(nodeAddress, ConfigUtilities.configureTestSSL());
-			// Now we can connect to the node itself using a valid RPC login. We login using the already configured user.
-			client.start("user1", "test");
-	                final CordaRPCOps proxy = client.proxy();
-	                recipient(proxy);
+			// The shared pool logs in using the already configured user.
+			try (KYCRPCClientPool.Lease lease = KYCRPCClientPool.shared().borrow(nodeAddress)) {
+				recipient(lease.getProxy());
+			}
 		}
 		
 		if(args[0].equalsIgnoreCase("SENDER"))
 		{
 			final HostAndPort nodeAddress = HostAndPort.fromString("localhost:10004");
 			System.out.println("Connecting to sender node "+ nodeAddress);
-			final CordaRPCClient client = new CordaRPCClient(nodeAddress, ConfigUtilities.configureTestSSL());
-			client.start("user1", "test");
-	                final CordaRPCOps proxy = client.proxy();
-			sender(proxy);  
-	        
+			try (KYCRPCClientPool.Lease lease = KYCRPCClientPool.shared().borrow(nodeAddress)) {
+				sender(lease.getProxy());
+			}
 		}
 		
 	}
@@ -65,31 +55,23 @@ public class AttachmentUtil {
                 // Make sure we have the file in storage under src/main/resources root
 		InputStream in = Thread.currentThread().getContextClassLoader().getResourceAsStream("bank-of-london-cp.jar");
 		// To add attachments the file must first be uploaded to the node, which returns a unique ID that can be added using TransactionBuilder.addAttachment()
-		SecureHash id = rpc.uploadAttachment(in);
-		// Now generate a transaction - building mutable transaction (TransactionBuilder) first to manupulate, adding etc.
-		Class memberClasses[] = TransactionType.General.class.getDeclaredClasses();     	
-    	        Class classDefinition = memberClasses[0];    	
-    	        TransactionBuilder builder = null;
-    	        try{
-    		     Constructor cons = classDefinition.getConstructor(Party.class);    		
-    		     Object obj = cons.newInstance(otherSide);    		
-    		     builder = (TransactionBuilder) obj;   		
-    	        }catch(Exception e){
-    		     e.printStackTrace();
-    	        } 
-    	        if(!rpc.attachmentExists(PROSPECTUS_HASH)){
-    		      builder.addAttachment(PROSPECTUS_HASH);    	
+		// Bytes the node already holds are not stored again
+		final AttachmentRegistry registry = new AttachmentRegistry(rpc);
+		SecureHash id = registry.upload(in, null).getHash();
+		// The node builds and signs the transaction itself, so the recipient can check who sent it.
+		final ArrayList<SecureHash> attachments = new ArrayList<>();
+    	        // Only reference the prospectus if the node actually holds it
+    	        if(registry.contains(PROSPECTUS_HASH)){
+    		      attachments.add(PROSPECTUS_HASH);
+    	        }
+		//Attaching id returned by the upload, unless it is the prospectus itself
+    	        if(!attachments.contains(id)){
+    		      attachments.add(id);
     	        }
-		//Attaching id returned by rpc.uploadAttachment() call
-    	        builder.addAttachment(id);
-    	        builder.signWith(net.corda.testing.CoreTestUtils.getALICE_KEY());
-    	        // convert the mutable transaction to immutable transaction (SignedTransaction)
-    	        SignedTransaction stx = builder.toSignedTransaction(true);
-    	
-    	        System.out.println("Sending attachment......"+stx.getId());     	
-    	
-    	        final Set<Party> participants = ImmutableSet.of(otherSide);        
-    	        final AttachmentFlow.AttachmentFlowResult result = rpc.startFlowDynamic(AttachmentFlow.Initiator.class, stx, otherSide).getReturnValue().toBlocking().first();  	
+
+    	        System.out.println("Sending attachments......"+attachments);
+
+    	        final AttachmentFlow.AttachmentFlowResult result = rpc.startFlowDynamic(AttachmentFlow.Initiator.class, attachments, otherSide).getReturnValue().toBlocking().first();
     	        System.out.println("Got result in sender :::: "+result.toString());    	
 
 	}
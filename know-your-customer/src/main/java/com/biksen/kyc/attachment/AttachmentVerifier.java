@@ -0,0 +1,241 @@
+package com.biksen.kyc.attachment;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import net.corda.core.contracts.Attachment;
+import net.corda.core.crypto.SecureHash;
+import net.corda.core.node.services.AttachmentStorage;
+
+/**
+ * Checks attachments a node holds before it accepts a transaction referencing them: the content must hash to the
+ * attachment id, must not exceed [MAX_BYTES], and, if [VERIFY_ZIP] is on, must be a readable zip whose entries pass
+ * their CRC checks and expand to no more than [MAX_UNCOMPRESSED_BYTES] in total. The attachments of one transaction
+ * together must not exceed [MAX_TRANSACTION_BYTES].
+ *
+ * Corda flows cannot wait for work off the state machine, so the calling flow holds the node's flow thread until the
+ * checks finish. That wait is kept short and bounded: sizes are checked from the store's files before anything is
+ * hashed, so an oversized attachment or transaction is rejected without being read; the attachments of one
+ * transaction are hashed concurrently on a shared pool; and since attachments are immutable, each hash verified in a
+ * node's storage is remembered for that storage (up to [CACHE_SIZE] of them) and not read again while the node still
+ * holds it. Files in the node's attachment store are hashed through
+ * mapped I/O; anything else is streamed out of [AttachmentStorage], stopping at the size limit.
+ *
+ * Limits are system properties: kyc.attachments.maxBytes (default 16 MB), kyc.attachments.maxTransactionBytes
+ * (default 64 MB), kyc.attachments.verifyZip (default true) and kyc.attachments.maxUncompressedBytes (default 64 MB).
+ */
+public final class AttachmentVerifier {
+    public static final long MAX_BYTES = Long.getLong("kyc.attachments.maxBytes", 16L * 1024 * 1024);
+    public static final long MAX_TRANSACTION_BYTES = Long.getLong("kyc.attachments.maxTransactionBytes", 64L * 1024 * 1024);
+    public static final boolean VERIFY_ZIP = Boolean.parseBoolean(System.getProperty("kyc.attachments.verifyZip", "true"));
+    public static final long MAX_UNCOMPRESSED_BYTES = Long.getLong("kyc.attachments.maxUncompressedBytes", 64L * 1024 * 1024);
+    public static final int CACHE_SIZE = 10000;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final ExecutorService POOL = Executors.newFixedThreadPool(
+            Math.max(2, Runtime.getRuntime().availableProcessors() / 2), runnable -> {
+                final Thread thread = new Thread(runnable, "kyc-attachment-verifier");
+                thread.setDaemon(true);
+                return thread;
+            });
+    // Verified hashes and their sizes, per node storage; several nodes can share a JVM.
+    private static final Map<AttachmentStorage, Map<SecureHash, Long>> VERIFIED = Collections.synchronizedMap(new WeakHashMap<>());
+
+    private AttachmentVerifier() {}
+
+    /**
+     * Checks every attachment and returns one report per attachment, in the given order. Failures are reported, not
+     * thrown.
+     */
+    public static List<AttachmentReport> verifyAll(List<SecureHash> hashes, AttachmentStorage storage) throws InterruptedException {
+        final long total = knownTotalSize(hashes, storage);
+        if (total > MAX_TRANSACTION_BYTES) {
+            final List<AttachmentReport> reports = new ArrayList<>(hashes.size());
+            for (SecureHash hash : hashes) {
+                reports.add(AttachmentReport.failed(hash, knownSize(hash, storage), 0,
+                        "The transaction's attachments total " + total + " bytes, over the " + MAX_TRANSACTION_BYTES + " byte limit."));
+            }
+            return reports;
+        }
+        if (hashes.size() == 1) {
+            return Arrays.asList(verify(hashes.get(0), storage));
+        }
+        final List<Future<AttachmentReport>> pending = new ArrayList<>(hashes.size());
+        for (SecureHash hash : hashes) {
+            pending.add(POOL.submit(() -> verify(hash, storage)));
+        }
+        final List<AttachmentReport> reports = new ArrayList<>(hashes.size());
+        for (int i = 0; i < pending.size(); i++) {
+            try {
+                reports.add(pending.get(i).get());
+            } catch (ExecutionException e) {
+                reports.add(AttachmentReport.failed(hashes.get(i), -1, 0, String.valueOf(e.getCause())));
+            }
+        }
+        return reports;
+    }
+
+    /**
+     * Checks one attachment.
+     */
+    public static AttachmentReport verify(SecureHash hash, AttachmentStorage storage) {
+        final long startedAt = System.nanoTime();
+        final Long verifiedSize = verifiedSize(hash, storage);
+        if (verifiedSize != null) {
+            return AttachmentReport.verified(hash, verifiedSize, elapsedMicros(startedAt));
+        }
+        long size = -1;
+        try {
+            final Path file = AttachmentStore.pathOf(AttachmentStore.storePath(storage), hash);
+            final byte[] digest;
+            if (file != null) {
+                size = Files.size(file);
+                checkSize(size);
+                digest = SHA256Util.digest(file);
+            } else {
+                final Attachment attachment = storage.openAttachment(hash);
+                if (attachment == null) {
+                    return AttachmentReport.failed(hash, size, elapsedMicros(startedAt), "Not held by this node.");
+                }
+                final DigestInputStream in = new DigestInputStream(attachment.open(), sha256());
+                size = drain(in);
+                digest = in.getMessageDigest().digest();
+            }
+            if (!Arrays.equals(digest, hash.getBytes())) {
+                return AttachmentReport.failed(hash, size, elapsedMicros(startedAt), "Content does not match its hash.");
+            }
+            if (VERIFY_ZIP) {
+                try (InputStream in = file != null ? Files.newInputStream(file) : storage.openAttachment(hash).open()) {
+                    checkZip(in);
+                }
+            }
+            verified(storage).put(hash, size);
+            return AttachmentReport.verified(hash, size, elapsedMicros(startedAt));
+        } catch (IOException | RuntimeException e) {
+            return AttachmentReport.failed(hash, size, elapsedMicros(startedAt), e.getMessage());
+        }
+    }
+
+    /**
+     * Reads every entry through, which makes ZipInputStream check each entry's CRC, and bounds the expanded size.
+     */
+    private static void checkZip(InputStream content) throws IOException {
+        final byte[] buffer = new byte[BUFFER_SIZE];
+        long expanded = 0;
+        int entries = 0;
+        try (ZipInputStream zip = new ZipInputStream(content)) {
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                entries++;
+                int read;
+                while ((read = zip.read(buffer)) != -1) {
+                    expanded += read;
+                    if (expanded > MAX_UNCOMPRESSED_BYTES) {
+                        throw new IOException("Expands to more than " + MAX_UNCOMPRESSED_BYTES + " bytes.");
+                    }
+                }
+                zip.closeEntry();
+            }
+        }
+        if (entries == 0) {
+            throw new IOException("Not a zip file, or an empty one.");
+        }
+    }
+
+    /**
+     * Sums the sizes of the attachments that are files in the node's store, without reading them.
+     */
+    private static long knownTotalSize(List<SecureHash> hashes, AttachmentStorage storage) {
+        long total = 0;
+        for (SecureHash hash : hashes) {
+            total += Math.max(0, knownSize(hash, storage));
+        }
+        return total;
+    }
+
+    /**
+     * The size of the attachment's file in the node's store, or -1 if it is not available as a file.
+     */
+    private static long knownSize(SecureHash hash, AttachmentStorage storage) {
+        final Long verifiedSize = verifiedSize(hash, storage);
+        if (verifiedSize != null) {
+            return verifiedSize;
+        }
+        try {
+            final Path file = AttachmentStore.pathOf(AttachmentStore.storePath(storage), hash);
+            return file == null ? -1 : Files.size(file);
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * The size of an attachment already verified in this storage, or null if it has not been or the storage no longer
+     * holds it.
+     */
+    private static Long verifiedSize(SecureHash hash, AttachmentStorage storage) {
+        final Long size = verified(storage).get(hash);
+        return size != null && storage.openAttachment(hash) != null ? size : null;
+    }
+
+    /**
+     * The storage's verified hashes. Access-ordered, so the least recently used is evicted first.
+     */
+    private static Map<SecureHash, Long> verified(AttachmentStorage storage) {
+        return VERIFIED.computeIfAbsent(storage, key -> Collections.synchronizedMap(
+                new LinkedHashMap<SecureHash, Long>(16, 0.75f, true) {
+                    @Override protected boolean removeEldestEntry(Map.Entry<SecureHash, Long> eldest) {
+                        return size() > CACHE_SIZE;
+                    }
+                }));
+    }
+
+    private static void checkSize(long size) throws IOException {
+        if (size > MAX_BYTES) {
+            throw new IOException("Larger than the " + MAX_BYTES + " byte limit.");
+        }
+    }
+
+    private static long drain(InputStream in) throws IOException {
+        final byte[] buffer = new byte[BUFFER_SIZE];
+        long size = 0;
+        try (InputStream stream = in) {
+            int read;
+            while ((read = stream.read(buffer)) != -1) {
+                size += read;
+                checkSize(size);
+            }
+        }
+        return size;
+    }
+
+    private static long elapsedMicros(long startedAt) {
+        return (System.nanoTime() - startedAt) / 1000;
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
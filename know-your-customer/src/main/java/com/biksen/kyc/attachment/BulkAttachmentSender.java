@@ -0,0 +1,321 @@
+package com.biksen.kyc.attachment;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.corda.core.crypto.Party;
+import net.corda.core.crypto.SecureHash;
+import net.corda.core.messaging.CordaRPCOps;
+
+import com.biksen.kyc.client.KYCRPCClientPool;
+import com.biksen.kyc.flow.AttachmentFlow;
+import com.google.common.net.HostAndPort;
+
+/**
+ * Sends every file under a directory to a counterparty as attachments, many files per [AttachmentFlow] transaction.
+ *
+ * Files go through a bounded pipeline: upload workers each hash a file, skip the upload if the node already holds
+ * that hash and otherwise stream it to the node, then hand the hash on; a single sender groups the hashes into
+ * transactions and keeps a bounded number of flows in flight. Workers and the sender use connections from the shared
+ * [KYCRPCClientPool].
+ *
+ * Progress is appended to a log, one line per file: "UPLOADED <sha256> <path>" once the node holds the file and
+ * "SENT <sha256> <path>" once a flow carrying it succeeded. A rerun skips sent files without reading them and does not
+ * upload or re-hash uploaded ones, so a crash only redoes the work that was in flight. Files are assumed not to change
+ * between runs.
+ *
+ * Usage: BulkAttachmentSender <node address> <directory> <counterparty> [progress log] [workers] [attachments per tx]
+ */
+public class BulkAttachmentSender {
+    public static final int DEFAULT_WORKERS = 4;
+    public static final int DEFAULT_ATTACHMENTS_PER_TRANSACTION = 20;
+    public static final int MAX_FLOWS_IN_FLIGHT = 4;
+
+    private static final String UPLOADED = "UPLOADED";
+    private static final String SENT = "SENT";
+
+    /**
+     * A file in the pipeline, relative to the directory being sent.
+     */
+    private static final class Item {
+        private final Path file;
+        private final String path;
+        private SecureHash.SHA256 hash;
+
+        private Item(Path file, String path, SecureHash.SHA256 hash) {
+            this.file = file;
+            this.path = path;
+            this.hash = hash;
+        }
+    }
+
+    // Marks the end of a queue.
+    private static final Item END = new Item(null, null, null);
+
+    private final HostAndPort node;
+    private final Path directory;
+    private final String counterpartyName;
+    private final Path progressLog;
+    private final int workers;
+    private final int attachmentsPerTransaction;
+
+    private final BlockingQueue<Item> files;
+    private final BlockingQueue<Item> uploaded;
+    private final Semaphore flowsInFlight = new Semaphore(MAX_FLOWS_IN_FLIGHT);
+    private final AtomicLong skippedSent = new AtomicLong();
+    private final AtomicLong alreadyHeld = new AtomicLong();
+    private final AtomicLong uploads = new AtomicLong();
+    private final AtomicLong bytesUploaded = new AtomicLong();
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private BufferedWriter log;
+
+    public BulkAttachmentSender(HostAndPort node, Path directory, String counterpartyName, Path progressLog,
+                                int workers, int attachmentsPerTransaction) {
+        this.node = node;
+        this.directory = directory;
+        this.counterpartyName = counterpartyName;
+        this.progressLog = progressLog;
+        this.workers = workers;
+        this.attachmentsPerTransaction = attachmentsPerTransaction;
+        this.files = new ArrayBlockingQueue<>(workers * 4);
+        this.uploaded = new ArrayBlockingQueue<>(attachmentsPerTransaction * MAX_FLOWS_IN_FLIGHT);
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 3) {
+            throw new IllegalArgumentException(
+                    "Usage: BulkAttachmentSender <node address> <directory> <counterparty> [progress log] [workers] [attachments per tx]");
+        }
+        final Path directory = Paths.get(args[1]);
+        final BulkAttachmentSender sender = new BulkAttachmentSender(
+                HostAndPort.fromString(args[0]),
+                directory,
+                args[2],
+                args.length > 3 ? Paths.get(args[3]) : directory.resolveSibling(directory.getFileName() + ".sent.log"),
+                args.length > 4 ? Integer.parseInt(args[4]) : DEFAULT_WORKERS,
+                args.length > 5 ? Integer.parseInt(args[5]) : DEFAULT_ATTACHMENTS_PER_TRANSACTION);
+        sender.run();
+        KYCRPCClientPool.shared().close();
+    }
+
+    /**
+     * Sends everything not yet sent and returns once every flow has finished.
+     */
+    public void run() throws Exception {
+        final long startedAt = System.nanoTime();
+        final Map<String, String[]> progress = readProgress();
+        final Party counterparty;
+        try (KYCRPCClientPool.Lease lease = KYCRPCClientPool.shared().borrow(node)) {
+            counterparty = lease.getProxy().partyFromName(counterpartyName);
+        }
+        if (counterparty == null) {
+            throw new IllegalArgumentException("Unknown counterparty " + counterpartyName);
+        }
+
+        log = Files.newBufferedWriter(progressLog, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        try {
+            final CountDownLatch workersDone = new CountDownLatch(workers);
+            for (int i = 0; i < workers; i++) {
+                final Thread worker = new Thread(() -> {
+                    try {
+                        upload();
+                    } finally {
+                        workersDone.countDown();
+                    }
+                }, "attachment-upload-" + i);
+                worker.setDaemon(true);
+                worker.start();
+            }
+            final Thread flowSender = new Thread(() -> send(counterparty), "attachment-flow-sender");
+            flowSender.start();
+
+            try {
+                for (Path file : SHA256Util.listFiles(directory)) {
+                    final String path = directory.relativize(file).toString().replace('\\', '/');
+                    final String[] done = progress.get(path);
+                    if (done != null && done[0].equals(SENT)) {
+                        skippedSent.incrementAndGet();
+                    } else if (done != null) {
+                        // Already on the node: straight to a transaction.
+                        uploaded.put(new Item(file, path, SecureHash.Companion.parse(done[1])));
+                    } else {
+                        files.put(new Item(file, path, null));
+                    }
+                }
+            } finally {
+                // Even if listing failed, end both queues so the workers and the sender finish what was handed out.
+                for (int i = 0; i < workers; i++) {
+                    files.put(END);
+                }
+                workersDone.await();
+                uploaded.put(END);
+                flowSender.join();
+            }
+        } finally {
+            synchronized (this) {
+                log.close();
+                log = null;
+            }
+        }
+
+        final double seconds = (System.nanoTime() - startedAt) / 1e9;
+        System.out.printf("Sent %d files in %.1f s (%d uploaded, %.1f MB; %d already held by the node; %d sent in an earlier run; %d failed).%n",
+                sent.get(), seconds, uploads.get(), bytesUploaded.get() / 1e6, alreadyHeld.get(), skippedSent.get(), failed.get());
+    }
+
+    /**
+     * An upload worker: hashes each file, uploads it unless the node holds it, and passes it on to the flow sender.
+     */
+    private void upload() {
+        try (KYCRPCClientPool.Lease lease = KYCRPCClientPool.shared().borrow(node)) {
+            final AttachmentRegistry registry = new AttachmentRegistry(lease.getProxy());
+            Item item;
+            while ((item = files.take()) != END) {
+                try {
+                    // Hashes locally first, so only files whose hash is known are sent.
+                    final AttachmentRegistry.Upload upload = registry.upload(item.file);
+                    if (upload.isStored()) {
+                        uploads.incrementAndGet();
+                        bytesUploaded.addAndGet(Files.size(item.file));
+                    } else {
+                        alreadyHeld.incrementAndGet();
+                    }
+                    item.hash = upload.getHash();
+                    record(UPLOADED, item);
+                    uploaded.put(item);
+                } catch (IOException | RuntimeException e) {
+                    failed.incrementAndGet();
+                    System.err.printf("Failed to upload %s: %s%n", item.path, e.getMessage());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            // No connection: fail this worker's share rather than stall the pipeline.
+            System.err.printf("Upload worker stopped: %s%n", e.getMessage());
+            drain(files);
+        }
+    }
+
+    /**
+     * The flow sender: groups uploaded files into transactions and starts a flow for each, waiting when
+     * [MAX_FLOWS_IN_FLIGHT] are already running.
+     */
+    private void send(Party counterparty) {
+        try (KYCRPCClientPool.Lease lease = KYCRPCClientPool.shared().borrow(node)) {
+            final CordaRPCOps rpc = lease.getProxy();
+            final List<Item> group = new ArrayList<>(attachmentsPerTransaction);
+            final Set<SecureHash> hashes = new HashSet<>();
+            Item item;
+            while ((item = uploaded.take()) != END) {
+                // Identical files travel once per transaction.
+                group.add(item);
+                hashes.add(item.hash);
+                if (hashes.size() == attachmentsPerTransaction) {
+                    startFlow(rpc, counterparty, new ArrayList<>(group), new ArrayList<>(hashes));
+                    group.clear();
+                    hashes.clear();
+                }
+            }
+            if (!group.isEmpty()) {
+                startFlow(rpc, counterparty, group, new ArrayList<>(hashes));
+            }
+            flowsInFlight.acquire(MAX_FLOWS_IN_FLIGHT);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            System.err.printf("Flow sender stopped: %s%n", e.getMessage());
+            drain(uploaded);
+        }
+    }
+
+    /**
+     * Counts the items left in the queue up to its end marker as failed.
+     */
+    private void drain(BlockingQueue<Item> queue) {
+        try {
+            while (queue.take() != END) {
+                failed.incrementAndGet();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void startFlow(CordaRPCOps rpc, Party counterparty, List<Item> group, ArrayList<SecureHash> hashes)
+            throws InterruptedException {
+        flowsInFlight.acquire();
+        rpc.startFlowDynamic(AttachmentFlow.Initiator.class, hashes, counterparty)
+                .getReturnValue()
+                .first()
+                .subscribe(result -> {
+                    if (result instanceof AttachmentFlow.AttachmentFlowResult.Success) {
+                        sent.addAndGet(group.size());
+                        group.forEach(item -> record(SENT, item));
+                    } else {
+                        failed.addAndGet(group.size());
+                        System.err.printf("Failed to send %d files: %s%n", group.size(), result);
+                    }
+                    flowsInFlight.release();
+                }, error -> {
+                    failed.addAndGet(group.size());
+                    System.err.printf("Failed to send %d files: %s%n", group.size(), error.getMessage());
+                    flowsInFlight.release();
+                });
+    }
+
+    /**
+     * Appends a progress line and flushes it, so it survives the process. Flows still running when [run] gave up
+     * report after the log is closed; those files are sent again on the next run.
+     */
+    private synchronized void record(String status, Item item) {
+        if (log == null) {
+            return;
+        }
+        try {
+            log.write(status + " " + item.hash + " " + item.path);
+            log.newLine();
+            log.flush();
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to write the progress log " + progressLog, e);
+        }
+    }
+
+    /**
+     * Returns the last recorded status and hash of each path in the progress log.
+     */
+    private Map<String, String[]> readProgress() throws IOException {
+        final Map<String, String[]> progress = new HashMap<>();
+        if (!Files.exists(progressLog)) {
+            return progress;
+        }
+        for (String line : Files.readAllLines(progressLog, StandardCharsets.UTF_8)) {
+            final String[] parts = line.split(" ", 3);
+            if (parts.length < 3) {
+                continue; // A line torn by a crash
+            }
+            final String[] previous = progress.get(parts[2]);
+            if (previous == null || !previous[0].equals(SENT)) {
+                progress.put(parts[2], new String[] { parts[0], parts[1] });
+            }
+        }
+        return progress;
+    }
+}
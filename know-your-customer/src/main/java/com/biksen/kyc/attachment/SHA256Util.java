@@ -1,34 +1,185 @@
 package com.biksen.kyc.attachment;
 
-import java.io.FileInputStream;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+/**
+ * SHA-256 hashing of KYC document bundles, used to pre-check attachmentExists before uploading.
+ *
+ * Large files are hashed through memory-mapped windows of the file, smaller ones through a per-thread direct
+ * buffer, so no file content is copied onto the Java heap. Many files can be hashed at once on a bounded pool.
+ *
+ * Usage: SHA256Util <file>
+ *        SHA256Util <directory> [manifest file] [threads]
+ *
+ * For a directory, writes a manifest of "<sha256>  <relative path>" lines (the sha256sum format), sorted by path,
+ * to the given file or to standard output.
+ */
 public class SHA256Util
 {
-    public static void main(String[] args)throws Exception
+    /** Files at least this large are memory-mapped rather than read. */
+    public static final long MAP_THRESHOLD = 4L * 1024 * 1024;
+    /** Size of each mapped window; bounds the address space used per file. */
+    public static final long MAP_WINDOW = 64L * 1024 * 1024;
+
+    private static final int READ_BUFFER_SIZE = 1024 * 1024;
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private static final ThreadLocal<ByteBuffer> READ_BUFFER =
+            ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(READ_BUFFER_SIZE));
+    private static final ThreadLocal<MessageDigest> DIGEST = ThreadLocal.withInitial(SHA256Util::newDigest);
+
+    public static void main(String[] args) throws Exception
     {
-        MessageDigest md = MessageDigest.getInstance("SHA-256");
-        FileInputStream fis = new FileInputStream("D:\\R-3083.zip");
+        if (args.length < 1) {
+            throw new IllegalArgumentException("Usage: SHA256Util <file|directory> [manifest file] [threads]");
+        }
+        final Path path = Paths.get(args[0]);
+        if (!Files.isDirectory(path)) {
+            System.out.println(hash(path) + "  " + path.getFileName());
+            return;
+        }
+
+        final int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        final List<Path> files = listFiles(path);
+        final Map<Path, String> hashes = hashAll(files, threads);
+
+        if (args.length > 1) {
+            try (BufferedWriter out = Files.newBufferedWriter(Paths.get(args[1]), StandardCharsets.UTF_8)) {
+                writeManifest(path, hashes, out);
+            }
+        } else {
+            final StringBuilder manifest = new StringBuilder();
+            writeManifest(path, hashes, manifest);
+            System.out.print(manifest);
+        }
+    }
+
+    /**
+     * Returns the lower-case hex SHA-256 of the file.
+     */
+    public static String hash(Path file) throws IOException {
+        return toHex(digest(file));
+    }
+
+    /**
+     * Returns the SHA-256 of the file.
+     */
+    public static byte[] digest(Path file) throws IOException {
+        final MessageDigest md = DIGEST.get();
+        md.reset();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            final long size = channel.size();
+            if (size >= MAP_THRESHOLD) {
+                for (long position = 0; position < size; position += MAP_WINDOW) {
+                    final MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(MAP_WINDOW, size - position));
+                    md.update(window);
+                }
+            } else {
+                final ByteBuffer buffer = READ_BUFFER.get();
+                buffer.clear();
+                while (channel.read(buffer) != -1) {
+                    buffer.flip();
+                    md.update(buffer);
+                    buffer.clear();
+                }
+            }
+        }
+        return md.digest();
+    }
+
+    /**
+     * Hashes the files concurrently on a pool of at most the given number of threads. The result holds the
+     * lower-case hex SHA-256 of each file, in the order the files were given.
+     */
+    public static Map<Path, String> hashAll(Collection<Path> files, int threads) throws IOException, InterruptedException {
+        final ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, threads), runnable -> {
+            final Thread thread = new Thread(runnable, "sha256-hasher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            final Map<Path, Future<String>> pending = new LinkedHashMap<>();
+            for (Path file : files) {
+                pending.put(file, pool.submit(() -> hash(file)));
+            }
+
+            final Map<Path, String> hashes = new LinkedHashMap<>();
+            for (Map.Entry<Path, Future<String>> entry : pending.entrySet()) {
+                try {
+                    hashes.put(entry.getKey(), entry.getValue().get());
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof IOException) {
+                        throw (IOException) e.getCause();
+                    }
+                    throw new IllegalStateException("Failed to hash " + entry.getKey(), e.getCause());
+                }
+            }
+            return hashes;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
 
-        byte[] dataBytes = new byte[1024];
+    /**
+     * Lists the regular files under the directory, recursively, sorted by path.
+     */
+    public static List<Path> listFiles(Path directory) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            return paths.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+        }
+    }
 
-        int nread = 0;
-        while ((nread = fis.read(dataBytes)) != -1) {
-          md.update(dataBytes, 0, nread);
-        };
-        byte[] mdbytes = md.digest();
+    /**
+     * Appends one "<sha256>  <path relative to root>" line per file.
+     */
+    public static void writeManifest(Path root, Map<Path, String> hashes, Appendable out) throws IOException {
+        for (Map.Entry<Path, String> entry : hashes.entrySet()) {
+            out.append(entry.getValue())
+               .append("  ")
+               .append(root.relativize(entry.getKey()).toString().replace('\\', '/'))
+               .append('\n');
+        }
+    }
 
-        //convert the byte to hex format method 1
-        StringBuffer sb = new StringBuffer();
-        for (int i = 0; i < mdbytes.length; i++) {
-          sb.append(Integer.toString((mdbytes[i] & 0xff) + 0x100, 16).substring(1));
+    /**
+     * Lower-case hex encoding, written straight into one char array.
+     */
+    public static String toHex(byte[] bytes) {
+        final char[] hex = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            final int b = bytes[i] & 0xff;
+            hex[2 * i] = HEX_DIGITS[b >>> 4];
+            hex[2 * i + 1] = HEX_DIGITS[b & 0x0f];
         }
+        return new String(hex);
+    }
 
-        System.out.println("Hex format : " + sb.toString());
-        
-        System.out.println(Thread.currentThread().getContextClassLoader().getResource(".").getPath()+"test.jar");
-        
-        fis.close();
-      
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
     }
 }
@@ -0,0 +1,82 @@
+package com.biksen.kyc.client;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import net.corda.core.crypto.SecureHash;
+
+import com.biksen.kyc.contract.KYCState;
+import com.biksen.kyc.model.KYC;
+
+/**
+ * Writes kyc states to a table, one JDBC transaction per batch. The table needs the columns
+ *
+ *   tx_id VARCHAR(64), output_index INT, kyc_id INT, user_id VARCHAR, user_name VARCHAR, kyc_date DATE,
+ *   kyc_valid_date DATE, doc_id VARCHAR, buyer VARCHAR, seller VARCHAR
+ *
+ * Rows of the batch's transactions are deleted before they are inserted, so a batch the consumer redelivers after a
+ * crash replaces its earlier copy instead of duplicating it. KYCContract guarantees every kyc state holds a kyc.
+ */
+public class JdbcKYCSink implements KYCTransactionConsumer.Sink<KYCState> {
+    private final Connection connection;
+    private final String deleteSql;
+    private final String insertSql;
+
+    /**
+     * @param table a trusted table name; it is not quoted.
+     */
+    public JdbcKYCSink(Connection connection, String table) throws SQLException {
+        this.connection = connection;
+        this.connection.setAutoCommit(false);
+        this.deleteSql = "DELETE FROM " + table + " WHERE tx_id = ?";
+        this.insertSql = "INSERT INTO " + table + " (tx_id, output_index, kyc_id, user_id, user_name, kyc_date,"
+                + " kyc_valid_date, doc_id, buyer, seller) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    }
+
+    @Override
+    public void write(List<KYCTransactionConsumer.Record<KYCState>> batch) throws SQLException {
+        final Set<SecureHash> txIds = new LinkedHashSet<>();
+        for (KYCTransactionConsumer.Record<KYCState> record : batch) {
+            txIds.add(record.getTxId());
+        }
+        try (PreparedStatement delete = connection.prepareStatement(deleteSql);
+             PreparedStatement insert = connection.prepareStatement(insertSql)) {
+            for (SecureHash txId : txIds) {
+                delete.setString(1, txId.toString());
+                delete.addBatch();
+            }
+            delete.executeBatch();
+
+            for (KYCTransactionConsumer.Record<KYCState> record : batch) {
+                final KYCState state = record.getState();
+                final KYC kyc = state.getKYC();
+                insert.setString(1, record.getTxId().toString());
+                insert.setInt(2, record.getIndex());
+                insert.setInt(3, kyc.getKycId());
+                insert.setString(4, kyc.getUserId());
+                insert.setString(5, kyc.getUserName());
+                insert.setDate(6, kyc.getKycDate() == null ? null : Date.valueOf(kyc.getKycDate()));
+                insert.setDate(7, kyc.getKycValidDate() == null ? null : Date.valueOf(kyc.getKycValidDate()));
+                insert.setString(8, kyc.getDocId());
+                insert.setString(9, state.getBuyer().getName());
+                insert.setString(10, state.getSeller().getName());
+                insert.addBatch();
+            }
+            insert.executeBatch();
+            connection.commit();
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        }
+    }
+
+    @Override
+    public void close() throws SQLException {
+        connection.close();
+    }
+}
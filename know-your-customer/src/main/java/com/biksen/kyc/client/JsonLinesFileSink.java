@@ -0,0 +1,53 @@
+package com.biksen.kyc.client;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Appends each record as one line of JSON ("txId", "index", "state") to a file, with the state written through the
+ * given view (states hold keys and contracts that do not belong in the output). Every batch is forced to disk before
+ * the consumer checkpoints it.
+ */
+public class JsonLinesFileSink<T> implements KYCTransactionConsumer.Sink<T> {
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    private final FileChannel channel;
+    private final Function<T, Object> view;
+
+    public JsonLinesFileSink(Path file, Function<T, Object> view) throws IOException {
+        this.view = view;
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    @Override
+    public void write(List<KYCTransactionConsumer.Record<T>> batch) throws IOException {
+        final StringBuilder lines = new StringBuilder(batch.size() * 256);
+        final Map<String, Object> line = new LinkedHashMap<>();
+        for (KYCTransactionConsumer.Record<T> record : batch) {
+            line.put("txId", record.getTxId().toString());
+            line.put("index", record.getIndex());
+            line.put("state", view.apply(record.getState()));
+            lines.append(JSON.writeValueAsString(line)).append('\n');
+        }
+        final ByteBuffer bytes = ByteBuffer.wrap(lines.toString().getBytes(StandardCharsets.UTF_8));
+        while (bytes.hasRemaining()) {
+            channel.write(bytes);
+        }
+        channel.force(false);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
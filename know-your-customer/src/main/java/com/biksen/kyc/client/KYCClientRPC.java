@@ -2,51 +2,56 @@ package com.biksen.kyc.client;
 
 import com.biksen.kyc.contract.KYCState;
 import com.google.common.net.HostAndPort;
-import kotlin.Pair;
 import net.corda.core.messaging.CordaRPCOps;
-import net.corda.core.transactions.SignedTransaction;
-import net.corda.node.services.config.ConfigUtilities;
-import net.corda.node.services.messaging.CordaRPCClient;
-import org.apache.activemq.artemis.api.core.ActiveMQException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import rx.Observable;
 
-import java.util.List;
-import java.util.concurrent.ExecutionException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  * Demonstration of using the CordaRPCClient to connect to a Corda Node and
  * steam some State data from the node.
+ *
+ * Kyc states are streamed through a [KYCTransactionConsumer], either to the log or, if an output file is given, as
+ * JSON lines to that file. The consumer checkpoints its progress, so a restart carries on where it stopped.
+ *
+ * Usage: KYCClientRPC <node address> [output file] [checkpoint file]
  */
 public class KYCClientRPC {
-    public static void main(String[] args) throws ActiveMQException, InterruptedException, ExecutionException {
-        if (args.length != 1) {
-            throw new IllegalArgumentException("Usage: ExampleClientRPC <node address>");
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1 || args.length > 3) {
+            throw new IllegalArgumentException("Usage: KYCClientRPC <node address> [output file] [checkpoint file]");
         }
 
         final Logger logger = LoggerFactory.getLogger(KYCClientRPC.class);
         final HostAndPort nodeAddress = HostAndPort.fromString(args[0]);
-        final CordaRPCClient client = new CordaRPCClient(nodeAddress, ConfigUtilities.configureTestSSL());
-
-        // Can be amended in the com.example.Main file.
-        client.start("user1", "test");
-        final CordaRPCOps proxy = client.proxy();
-
-        // Grab all signed transactions and all future signed transactions.
-        final Pair<List<SignedTransaction>, Observable<SignedTransaction>> txsAndFutureTxs =
-            proxy.verifiedTransactions();
-        final List<SignedTransaction> txs = txsAndFutureTxs.getFirst();
-        final Observable<SignedTransaction> futureTxs = txsAndFutureTxs.getSecond();
-
-        // Log the 'placed' purchase order states and listen for new ones.
-        futureTxs.startWith(txs).toBlocking().subscribe(
-                transaction ->
-                        transaction.getTx().getOutputs().forEach(
-                                output -> {
-                                    final KYCState poState = (KYCState) output.getData();
-                                    logger.info(poState.getKYC().toString());
-                                })
-        );
+
+        // The pool logs in with the RPC user configured for the nodes.
+        final KYCRPCClientPool.Lease lease = KYCRPCClientPool.shared().borrow(nodeAddress);
+        final CordaRPCOps proxy = lease.getProxy();
+
+        final KYCTransactionConsumer.Sink<KYCState> sink = args.length > 1
+                ? new JsonLinesFileSink<>(Paths.get(args[1]), KYCClientRPC::view)
+                : batch -> batch.forEach(record -> logger.info(record.getState().getKYC().toString()));
+        final Path checkpoint = Paths.get(args.length > 2 ? args[2] : "kyc-client.checkpoint");
+
+        // Log the kyc states not yet in the checkpoint and listen for new ones.
+        try (KYCTransactionConsumer<KYCState> consumer = new KYCTransactionConsumer<>(proxy, KYCState.class, sink, checkpoint)) {
+            consumer.start();
+            consumer.awaitTermination();
+        } finally {
+            lease.close();
+        }
+    }
+
+    private static Object view(KYCState state) {
+        final Map<String, Object> view = new LinkedHashMap<>();
+        view.put("kyc", state.getKYC());
+        view.put("buyer", state.getBuyer().getName());
+        view.put("seller", state.getSeller().getName());
+        return view;
     }
-}
\ No newline at end of file
+}
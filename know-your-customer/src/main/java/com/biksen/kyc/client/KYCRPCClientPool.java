@@ -0,0 +1,299 @@
+package com.biksen.kyc.client;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.corda.core.messaging.CordaRPCOps;
+import net.corda.node.services.config.ConfigUtilities;
+import net.corda.node.services.messaging.CordaRPCClient;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.google.common.net.HostAndPort;
+
+/**
+ * A pool of logged-in RPC connections per node, shared by the KYC client tools so that the TLS and Artemis handshake
+ * is paid once per connection rather than once per task.
+ *
+ * A connection serves one thread at a time: workers [borrow] one, use its proxy, and close the [Lease] to hand it
+ * back. At most [maxPerNode] connections are open to a node; further borrowers wait. Idle connections are checked
+ * with a cheap RPC call, on borrow if they have been idle a while and in the background, and replaced when they fail.
+ * Opening a connection is retried with backoff.
+ *
+ * Connection setup time, borrow wait time and per-node saturation are kept in [getMetrics].
+ */
+public class KYCRPCClientPool implements AutoCloseable {
+    public static final int DEFAULT_MAX_PER_NODE = Integer.getInteger("kyc.rpc.poolSize", 4);
+    public static final long HEALTH_CHECK_INTERVAL_MILLIS = 30_000;
+    public static final int CONNECT_ATTEMPTS = 5;
+
+    private static final Logger logger = LoggerFactory.getLogger(KYCRPCClientPool.class);
+    private static final long CONNECT_BACKOFF_MILLIS = 500;
+
+    private static KYCRPCClientPool shared;
+
+    /**
+     * A borrowed connection. Close it to return it to the pool; call [invalidate] first if the connection failed,
+     * so it is discarded instead.
+     */
+    public final class Lease implements AutoCloseable {
+        private final NodePool pool;
+        private final Connection connection;
+        private boolean invalid;
+        private boolean returned;
+
+        private Lease(NodePool pool, Connection connection) {
+            this.pool = pool;
+            this.connection = connection;
+        }
+
+        public CordaRPCOps getProxy() { return connection.proxy; }
+
+        public void invalidate() { invalid = true; }
+
+        @Override
+        public void close() {
+            if (!returned) {
+                returned = true;
+                pool.release(connection, invalid);
+            }
+        }
+    }
+
+    private static final class Connection {
+        private final CordaRPCClient client;
+        private final CordaRPCOps proxy;
+        private volatile long lastUsedAt = System.currentTimeMillis();
+
+        private Connection(CordaRPCClient client, CordaRPCOps proxy) {
+            this.client = client;
+            this.proxy = proxy;
+        }
+
+        private boolean isHealthy() {
+            try {
+                proxy.currentNodeTime();
+                return true;
+            } catch (Exception e) {
+                return false;
+            }
+        }
+
+        private void closeQuietly() {
+            try {
+                client.close();
+            } catch (Exception e) {
+                logger.debug("Failed to close an RPC connection.", e);
+            }
+        }
+    }
+
+    private final class NodePool {
+        private final HostAndPort address;
+        // Most recently used first, so a quiet period lets the surplus connections age out of use.
+        private final LinkedBlockingDeque<Connection> idle = new LinkedBlockingDeque<>();
+        private final Semaphore permits = new Semaphore(maxPerNode, true);
+        private final AtomicInteger open = new AtomicInteger();
+
+        private NodePool(HostAndPort address) {
+            this.address = address;
+            final String prefix = MetricRegistry.name(KYCRPCClientPool.class, address.toString());
+            metrics.register(MetricRegistry.name(prefix, "open"), (Gauge<Integer>) open::get);
+            metrics.register(MetricRegistry.name(prefix, "inUse"), (Gauge<Integer>) () -> maxPerNode - permits.availablePermits());
+            metrics.register(MetricRegistry.name(prefix, "waiting"), (Gauge<Integer>) permits::getQueueLength);
+            metrics.register(MetricRegistry.name(prefix, "saturation"),
+                    (Gauge<Double>) () -> (maxPerNode - permits.availablePermits()) / (double) maxPerNode);
+        }
+
+        private Lease borrow(long timeout, TimeUnit unit) throws InterruptedException, TimeoutException {
+            final Timer.Context wait = borrowWait.time();
+            if (!permits.tryAcquire(timeout, unit)) {
+                wait.stop();
+                throw new TimeoutException("No RPC connection to " + address + " became free in time.");
+            }
+            wait.stop();
+            try {
+                Connection connection;
+                while ((connection = idle.pollFirst()) != null) {
+                    if (System.currentTimeMillis() - connection.lastUsedAt < HEALTH_CHECK_INTERVAL_MILLIS || connection.isHealthy()) {
+                        return new Lease(this, connection);
+                    }
+                    healthCheckFailures.incrementAndGet();
+                    discard(connection);
+                }
+                return new Lease(this, connect());
+            } catch (RuntimeException | InterruptedException e) {
+                permits.release();
+                throw e;
+            }
+        }
+
+        private void release(Connection connection, boolean invalid) {
+            if (invalid || closed) {
+                discard(connection);
+            } else {
+                connection.lastUsedAt = System.currentTimeMillis();
+                idle.offerFirst(connection);
+            }
+            permits.release();
+        }
+
+        private Connection connect() throws InterruptedException {
+            RuntimeException last = null;
+            for (int attempt = 1; attempt <= CONNECT_ATTEMPTS; attempt++) {
+                final Timer.Context setup = connectionSetup.time();
+                final CordaRPCClient client = new CordaRPCClient(address, ConfigUtilities.configureTestSSL());
+                try {
+                    client.start(username, password);
+                    final Connection connection = new Connection(client, client.proxy());
+                    setup.stop();
+                    open.incrementAndGet();
+                    return connection;
+                } catch (Exception e) {
+                    // Only successful setups are timed.
+                    connectFailures.incrementAndGet();
+                    last = e instanceof RuntimeException ? (RuntimeException) e : new IllegalStateException(e);
+                    try {
+                        client.close();
+                    } catch (Exception ignored) { }
+                    logger.warn("RPC connection attempt {} to {} failed: {}", attempt, address, e.getMessage());
+                    if (attempt < CONNECT_ATTEMPTS) {
+                        Thread.sleep(CONNECT_BACKOFF_MILLIS << (attempt - 1));
+                    }
+                }
+            }
+            throw last;
+        }
+
+        private void checkIdle() {
+            for (Connection connection : idle) {
+                if (System.currentTimeMillis() - connection.lastUsedAt >= HEALTH_CHECK_INTERVAL_MILLIS
+                        && idle.remove(connection)) {
+                    if (connection.isHealthy()) {
+                        connection.lastUsedAt = System.currentTimeMillis();
+                        idle.offerLast(connection);
+                    } else {
+                        healthCheckFailures.incrementAndGet();
+                        discard(connection);
+                    }
+                }
+            }
+        }
+
+        private void discard(Connection connection) {
+            open.decrementAndGet();
+            connection.closeQuietly();
+        }
+
+        private void closeIdle() {
+            Connection connection;
+            while ((connection = idle.pollFirst()) != null) {
+                open.decrementAndGet();
+                connection.closeQuietly();
+            }
+        }
+    }
+
+    private final String username;
+    private final String password;
+    private final int maxPerNode;
+    private final ConcurrentMap<HostAndPort, NodePool> nodes = new ConcurrentHashMap<>();
+    private final MetricRegistry metrics = new MetricRegistry();
+    private final Timer connectionSetup = metrics.timer(MetricRegistry.name(KYCRPCClientPool.class, "connectionSetup"));
+    private final Timer borrowWait = metrics.timer(MetricRegistry.name(KYCRPCClientPool.class, "borrowWait"));
+    private final AtomicLong connectFailures = new AtomicLong();
+    private final AtomicLong healthCheckFailures = new AtomicLong();
+    private final ScheduledExecutorService checker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, "kyc-rpc-pool-health");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private volatile boolean closed;
+
+    public KYCRPCClientPool(String username, String password, int maxPerNode) {
+        this.username = username;
+        this.password = password;
+        this.maxPerNode = maxPerNode;
+        checker.scheduleWithFixedDelay(() -> nodes.values().forEach(NodePool::checkIdle),
+                HEALTH_CHECK_INTERVAL_MILLIS, HEALTH_CHECK_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * The pool the KYC tools share, logged in with the RPC user configured for the nodes (kyc.rpc.user and
+     * kyc.rpc.password, by default the one deployNodes creates). Closed when the JVM exits.
+     */
+    public static synchronized KYCRPCClientPool shared() {
+        if (shared == null) {
+            final KYCRPCClientPool pool = new KYCRPCClientPool(
+                    System.getProperty("kyc.rpc.user", "user1"), System.getProperty("kyc.rpc.password", "test"), DEFAULT_MAX_PER_NODE);
+            Runtime.getRuntime().addShutdownHook(new Thread(pool::close, "kyc-rpc-pool-shutdown"));
+            shared = pool;
+        }
+        return shared;
+    }
+
+    /**
+     * Borrows a connection to the node, opening one if none is idle and the node is below [maxPerNode], otherwise
+     * waiting for one to be returned.
+     */
+    public Lease borrow(HostAndPort node) throws InterruptedException {
+        try {
+            return borrow(node, Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public Lease borrow(HostAndPort node, long timeout, TimeUnit unit) throws InterruptedException, TimeoutException {
+        if (closed) {
+            throw new IllegalStateException("The RPC client pool is closed.");
+        }
+        return nodes.computeIfAbsent(node, NodePool::new).borrow(timeout, unit);
+    }
+
+    public MetricRegistry getMetrics() { return metrics; }
+
+    public Map<String, Object> getStats() {
+        final Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("nodes", nodes.size());
+        stats.put("connectionsOpened", connectionSetup.getCount());
+        stats.put("connectionSetupMeanMillis", connectionSetup.getSnapshot().getMean() / 1e6);
+        stats.put("connectionSetupP99Millis", connectionSetup.getSnapshot().get99thPercentile() / 1e6);
+        stats.put("borrowWaitP99Millis", borrowWait.getSnapshot().get99thPercentile() / 1e6);
+        stats.put("connectFailures", connectFailures.get());
+        stats.put("healthCheckFailures", healthCheckFailures.get());
+        for (NodePool pool : nodes.values()) {
+            final Map<String, Object> node = new LinkedHashMap<>();
+            node.put("open", pool.open.get());
+            node.put("idle", pool.idle.size());
+            node.put("inUse", maxPerNode - pool.permits.availablePermits());
+            node.put("waiting", pool.permits.getQueueLength());
+            stats.put(pool.address.toString(), node);
+        }
+        return stats;
+    }
+
+    /**
+     * Closes the idle connections; leased ones are closed as they are returned.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        checker.shutdownNow();
+        nodes.values().forEach(NodePool::closeIdle);
+    }
+}
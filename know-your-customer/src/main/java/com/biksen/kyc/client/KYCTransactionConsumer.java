@@ -0,0 +1,337 @@
+package com.biksen.kyc.client;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import kotlin.Pair;
+import net.corda.core.contracts.ContractState;
+import net.corda.core.contracts.TransactionState;
+import net.corda.core.crypto.SecureHash;
+import net.corda.core.messaging.CordaRPCOps;
+import net.corda.core.transactions.SignedTransaction;
+import rx.Observable;
+import rx.Subscription;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Streams the outputs of a given state type from a node's verified transactions into a [Sink], in batches.
+ *
+ * History is delivered first, then new transactions as they are verified. A bounded queue sits between a feeder
+ * thread and the sink; when the sink falls behind, the feeder waits on it. New transactions are handed over by the
+ * RPC thread without waiting, so the node's feed is never held up; they are buffered until the feeder reaches them.
+ * Outputs of other types are skipped, never cast.
+ *
+ * The resume mark is bounded: the number of transactions taken so far and the ids of the last [RECENT_WINDOW] of them.
+ * After the sink accepts a batch, the mark is written to a temporary file, forced to disk and moved over the
+ * checkpoint file. On restart the part of the node's history before the count, less the window, is dropped without
+ * being looked at, and the rest is checked against the recent ids. This relies on the node listing its history in
+ * the order it recorded it, apart from the last [RECENT_WINDOW] transactions, whose order may vary. Delivery is at
+ * least once: a crash between the sink and the checkpoint write replays that batch, so sinks should tolerate it.
+ *
+ * The RPC call returns the node's history as one list, so it is held in memory while it is being fed.
+ */
+public class KYCTransactionConsumer<T extends ContractState> implements AutoCloseable {
+    public static final int DEFAULT_BATCH_SIZE = 500;
+    public static final long DEFAULT_MAX_BATCH_DELAY_MILLIS = 1000;
+    public static final int RECENT_WINDOW = Integer.getInteger("kyc.consumer.recentWindow", 1024);
+
+    private static final Logger logger = LoggerFactory.getLogger(KYCTransactionConsumer.class);
+    private static final int SHA256_HEX_LENGTH = 64;
+    private static final long POLL_MILLIS = 100;
+
+    /**
+     * An output of the consumed type together with where it was produced.
+     */
+    public static final class Record<T> {
+        private final SecureHash txId;
+        private final int index;
+        private final T state;
+
+        private Record(SecureHash txId, int index, T state) {
+            this.txId = txId;
+            this.index = index;
+            this.state = state;
+        }
+
+        public SecureHash getTxId() { return txId; }
+        public int getIndex() { return index; }
+        public T getState() { return state; }
+    }
+
+    /**
+     * Where the records go. A batch is only checkpointed once [write] returns; if it throws, the consumer stops and
+     * the batch is redelivered on the next start.
+     */
+    public interface Sink<T> extends AutoCloseable {
+        void write(List<Record<T>> batch) throws Exception;
+
+        @Override default void close() throws Exception { }
+    }
+
+    private final CordaRPCOps rpc;
+    private final Class<T> stateType;
+    private final Sink<T> sink;
+    private final Path checkpointFile;
+    private final int batchSize;
+    private final long maxBatchDelayMillis;
+
+    private final BlockingQueue<SignedTransaction> queue;
+    // New transactions from the node, waiting for the feeder; never blocks the RPC thread.
+    private final BlockingQueue<SignedTransaction> updates = new LinkedBlockingQueue<>();
+    private final CountDownLatch stopped = new CountDownLatch(1);
+    private final AtomicLong transactions = new AtomicLong();
+    private final AtomicLong records = new AtomicLong();
+    private final AtomicLong skipped = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    // The resume mark, loaded from the checkpoint. Only touched on the writer thread once started.
+    private final LinkedHashSet<SecureHash> recent = new LinkedHashSet<>();
+    private long taken;
+
+    private Subscription subscription;
+    private Thread feeder;
+    private Thread writer;
+    private volatile boolean closed;
+    private volatile Throwable failure;
+
+    public KYCTransactionConsumer(CordaRPCOps rpc, Class<T> stateType, Sink<T> sink, Path checkpointFile) {
+        this(rpc, stateType, sink, checkpointFile, DEFAULT_BATCH_SIZE, DEFAULT_MAX_BATCH_DELAY_MILLIS);
+    }
+
+    /**
+     * @param batchSize the most records handed to the sink at once; also sizes the queue to the node.
+     * @param maxBatchDelayMillis how long a partial batch may wait for more transactions before it is written.
+     */
+    public KYCTransactionConsumer(CordaRPCOps rpc, Class<T> stateType, Sink<T> sink, Path checkpointFile,
+                                  int batchSize, long maxBatchDelayMillis) {
+        this.rpc = rpc;
+        this.stateType = stateType;
+        this.sink = sink;
+        this.checkpointFile = checkpointFile;
+        this.batchSize = batchSize;
+        this.maxBatchDelayMillis = maxBatchDelayMillis;
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, batchSize * 2));
+    }
+
+    /**
+     * Starts consuming on background threads and returns.
+     */
+    public synchronized void start() throws IOException {
+        if (writer != null) {
+            throw new IllegalStateException("Already started.");
+        }
+        readCheckpoint();
+        final Pair<List<SignedTransaction>, Observable<SignedTransaction>> txs = rpc.verifiedTransactions();
+        final List<SignedTransaction> history = txs.getFirst();
+        final int resumeAt = (int) Math.min(history.size(), Math.max(0, taken - recent.size()));
+        if (taken > 0) {
+            logger.info("Resuming after {} transactions; the node holds {}.", taken, history.size());
+        }
+
+        // Subscribe straight away so nothing verified from now on is missed; new transactions wait behind the history.
+        subscription = txs.getSecond().subscribe(updates::add, this::fail);
+
+        writer = new Thread(this::writeBatches, "kyc-consumer-writer");
+        writer.start();
+        feeder = new Thread(() -> feed(history.subList(resumeAt, history.size())), "kyc-consumer-feeder");
+        feeder.setDaemon(true);
+        feeder.start();
+    }
+
+    /**
+     * Blocks until the consumer is closed or fails.
+     *
+     * @throws IllegalStateException wrapping the failure, if the sink or the node feed failed.
+     */
+    public void awaitTermination() throws InterruptedException {
+        stopped.await();
+        if (failure != null) {
+            throw new IllegalStateException("KYC transaction consumer failed.", failure);
+        }
+    }
+
+    /**
+     * Stops consuming. The batch being collected is written and checkpointed first; anything still queued is picked
+     * up from the checkpoint on the next start. The threads stop on the closed flag and are never interrupted, so no
+     * write to the sink or the checkpoint is cut short.
+     */
+    @Override
+    public void close() throws Exception {
+        closed = true;
+        if (subscription != null) {
+            subscription.unsubscribe();
+        }
+        if (feeder != null) {
+            feeder.join();
+        }
+        if (writer != null) {
+            writer.join();
+        }
+        sink.close();
+        stopped.countDown();
+    }
+
+    public long getTransactions() { return transactions.get(); }
+    public long getRecords() { return records.get(); }
+    public long getSkipped() { return skipped.get(); }
+    public long getBatches() { return batches.get(); }
+    public int getBacklog() { return queue.size() + updates.size(); }
+
+    /**
+     * Queues the history from the resume mark on, then the new transactions as they arrive; the writer skips what the
+     * recent ids already hold.
+     */
+    private void feed(List<SignedTransaction> history) {
+        try {
+            for (int i = 0; i < history.size() && !closed; i++) {
+                put(history.get(i));
+            }
+            while (!closed) {
+                final SignedTransaction tx = updates.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (tx != null) {
+                    put(tx);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Waits for room in the queue, which is the backpressure from the sink, until the consumer is closed.
+     */
+    private void put(SignedTransaction tx) throws InterruptedException {
+        while (!closed && !queue.offer(tx, POLL_MILLIS, TimeUnit.MILLISECONDS)) { }
+    }
+
+    private void writeBatches() {
+        final List<Record<T>> batch = new ArrayList<>(batchSize);
+        final List<SecureHash> batchTxIds = new ArrayList<>(batchSize);
+        try {
+            while (!closed) {
+                // Fill the batch until it is full or the oldest transaction in it has waited long enough.
+                SignedTransaction next = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (next == null) {
+                    continue;
+                }
+                final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxBatchDelayMillis);
+                while (next != null) {
+                    collect(next, batch, batchTxIds);
+                    if (batch.size() >= batchSize || batchTxIds.size() >= batchSize) {
+                        break;
+                    }
+                    final long remaining = deadline - System.nanoTime();
+                    next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : null;
+                }
+                // A batch of transactions without matching outputs still moves the checkpoint on.
+                if (!batch.isEmpty()) {
+                    sink.write(new ArrayList<>(batch));
+                    records.addAndGet(batch.size());
+                    batches.incrementAndGet();
+                    batch.clear();
+                }
+                if (!batchTxIds.isEmpty()) {
+                    writeCheckpoint();
+                    batchTxIds.clear();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Throwable e) {
+            fail(e);
+        }
+    }
+
+    private void collect(SignedTransaction tx, List<Record<T>> batch, List<SecureHash> batchTxIds) {
+        // Also drops a transaction that arrives both in the history and as an update.
+        if (!recent.add(tx.getId())) {
+            skipped.incrementAndGet();
+            return;
+        }
+        if (recent.size() > RECENT_WINDOW) {
+            recent.remove(recent.iterator().next());
+        }
+        taken++;
+        transactions.incrementAndGet();
+        batchTxIds.add(tx.getId());
+        final List<TransactionState<ContractState>> outputs = tx.getTx().getOutputs();
+        for (int i = 0; i < outputs.size(); i++) {
+            final ContractState data = outputs.get(i).getData();
+            if (stateType.isInstance(data)) {
+                batch.add(new Record<>(tx.getId(), i, stateType.cast(data)));
+            }
+        }
+    }
+
+    private void fail(Throwable e) {
+        logger.error("KYC transaction consumer stopped.", e);
+        failure = e;
+        closed = true;
+        if (subscription != null) {
+            subscription.unsubscribe();
+        }
+        stopped.countDown();
+    }
+
+    /**
+     * Loads the resume mark: the count of transactions taken on the first line, then the most recent ids, oldest
+     * first. A checkpoint that cannot be read starts the consumer from the beginning of the history.
+     */
+    private void readCheckpoint() throws IOException {
+        if (checkpointFile == null || !Files.exists(checkpointFile)) {
+            return;
+        }
+        final List<String> lines = Files.readAllLines(checkpointFile, StandardCharsets.UTF_8);
+        try {
+            taken = lines.isEmpty() ? 0 : Long.parseLong(lines.get(0).trim());
+            for (int i = 1; i < lines.size(); i++) {
+                recent.add(SecureHash.Companion.parse(lines.get(i).trim()));
+            }
+        } catch (IllegalArgumentException e) {
+            logger.warn("Ignoring unreadable checkpoint {}: {}", checkpointFile, e.getMessage());
+            taken = 0;
+            recent.clear();
+        }
+    }
+
+    /**
+     * Replaces the checkpoint with the current mark. The new content is forced to disk before it is moved into place,
+     * so a crash leaves either the old mark or the new one, and a batch the sink has accepted is not taken again.
+     */
+    private void writeCheckpoint() throws IOException {
+        if (checkpointFile == null) {
+            return;
+        }
+        final StringBuilder lines = new StringBuilder(20 + recent.size() * (SHA256_HEX_LENGTH + 1));
+        lines.append(taken).append('\n');
+        for (SecureHash txId : recent) {
+            lines.append(txId).append('\n');
+        }
+        final Path temp = checkpointFile.resolveSibling(checkpointFile.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            final ByteBuffer buffer = ByteBuffer.wrap(lines.toString().getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        }
+        Files.move(temp, checkpointFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -0,0 +1,23 @@
+package com.biksen.kyc.client;
+
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Hands records to another part of the same process through a queue. With a bounded queue, a slow reader holds back
+ * the consumer, and through it the node.
+ */
+public class QueueSink<T> implements KYCTransactionConsumer.Sink<T> {
+    private final BlockingQueue<KYCTransactionConsumer.Record<T>> queue;
+
+    public QueueSink(BlockingQueue<KYCTransactionConsumer.Record<T>> queue) {
+        this.queue = queue;
+    }
+
+    @Override
+    public void write(List<KYCTransactionConsumer.Record<T>> batch) throws InterruptedException {
+        for (KYCTransactionConsumer.Record<T> record : batch) {
+            queue.put(record);
+        }
+    }
+}
@@ -8,13 +8,12 @@ import net.corda.core.contracts.TransactionForContract.InOutGroup;
 import net.corda.core.contracts.clauses.*;
 import net.corda.core.crypto.SecureHash;
 
-import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Set;
 
 import static java.util.Objects.requireNonNull;
-import static java.util.stream.Collectors.toList;
 import static kotlin.collections.CollectionsKt.single;
 import static net.corda.core.contracts.ContractsDSL.requireSingleCommand;
 import static net.corda.core.contracts.ContractsDSL.requireThat;
@@ -24,35 +23,47 @@ public class KYCContract implements Contract {
     /**
      * This is a reference to the underlying legal contract template and associated parameters.
      */
-    private final SecureHash legalContractReference = SecureHash.sha256("kyc template and params");
-    @Override public final SecureHash getLegalContractReference() { return legalContractReference; }
+    private static final SecureHash LEGAL_CONTRACT_REFERENCE = SecureHash.sha256("kyc template and params");
+    @Override public final SecureHash getLegalContractReference() { return LEGAL_CONTRACT_REFERENCE; }
 
     /**
-     * Filters the command list by type, party and public key all at once.
+     * The AllComposition() clause mandates that all specified clauses clauses (in this case [Timestamped] and [Group])
+     * must be executed and valid for a transaction involving this type of contract to be valid.
+     *
+     * The clauses hold no state, so one tree is shared by every verification.
+     */
+    @SuppressWarnings("unchecked")
+    private static final AllComposition<ContractState, Commands, Unit> CLAUSES =
+            new AllComposition<>(new Clauses.Timestamp(), new Clauses.Group());
+
+    /**
+     * Returns the commands of this contract. The transaction's own list is returned when every command is ours, which
+     * is the usual case; otherwise the matching commands are copied, but never re-wrapped.
      */
-    private List<AuthenticatedObject<Commands>> extractCommands(TransactionForContract tx) {
-        return tx.getCommands()
-                .stream()
-                .filter(command -> command.getValue() instanceof Commands)
-                .map(command -> new AuthenticatedObject<>(
-                        command.getSigners(),
-                        command.getSigningParties(),
-                        (Commands) command.getValue()))
-                .collect(toList());
+    @SuppressWarnings("unchecked")
+    private static List<AuthenticatedObject<Commands>> extractCommands(TransactionForContract tx) {
+        final List<AuthenticatedObject<CommandData>> commands = tx.getCommands();
+        for (AuthenticatedObject<CommandData> command : commands) {
+            if (!(command.getValue() instanceof Commands)) {
+                final List<AuthenticatedObject<Commands>> ours = new ArrayList<>(commands.size());
+                for (AuthenticatedObject<CommandData> candidate : commands) {
+                    if (candidate.getValue() instanceof Commands) {
+                        ours.add((AuthenticatedObject<Commands>) (AuthenticatedObject<?>) candidate);
+                    }
+                }
+                return ours;
+            }
+        }
+        return (List<AuthenticatedObject<Commands>>) (List<?>) commands;
     }
 
     /**
-     * The AllComposition() clause mandates that all specified clauses clauses (in this case [Timestamped] and [Group])
-     * must be executed and valid for a transaction involving this type of contract to be valid.
+     * The domain rules in [KYCValidator] are checked over all outputs first, so every broken rule is reported at once.
      */
     @Override
-    public void verify(TransactionForContract tx) {    	
-    	/*List<AuthenticatedObject<Commands>> comm = extractCommands(tx);
-    	ClauseVerifier.verifyClause(tx, new Clauses.Timestamp(), comm);
-    	ClauseVerifier.verifyClause(tx, new Clauses.Group(), comm);*/
-    	
-    	AllComposition com = new AllComposition<>(new Clauses.Timestamp(), new Clauses.Group());
-        ClauseVerifier.verifyClause(tx,com,extractCommands(tx));
+    public void verify(TransactionForContract tx) {
+        KYCValidator.requireValid(tx.getOutputs());
+        ClauseVerifier.verifyClause(tx, CLAUSES, extractCommands(tx));
     }
 
     /**
@@ -112,7 +123,6 @@ public class KYCContract implements Contract {
             {
                 final AuthenticatedObject<Commands.Place> command = requireSingleCommand(tx.getCommands(), Commands.Place.class);
                 final KYCState out = single(outputs);
-                final Instant time = tx.getTimestamp().getMidpoint();
 
                 requireThat(require -> {
                     // Generic constraints around generation of the issue purchase order transaction.
@@ -120,21 +130,9 @@ public class KYCContract implements Contract {
                             inputs.isEmpty());
                     require.by("Only one output state should be created for each group.",
                             outputs.size() == 1);
-                    require.by("The buyer and the seller cannot be the same entity.",
-                            out.getBuyer() != out.getSeller());
                     require.by("All of the participants must be signers.",
                             command.getSigners().containsAll(out.getParticipants()));
-
-                    // Purchase order specific constraints.
-                    /*require.by("We only deliver to the UK.", out.getKYC().getKycId() == 111);
-                    require.by("You must order at least one type of item.",
-                            !out.getPurchaseOrder().getItems().isEmpty());
-                    require.by("You cannot order zero or negative amounts of an item.",
-                            out.getPurchaseOrder().getItems().stream().allMatch(item -> item.getAmount() > 0));
-                    require.by("You can only order up to 100 items in total.",
-                            out.getPurchaseOrder().getItems().stream().mapToInt(PurchaseOrder.Item::getAmount).sum() <= 100);
-                    require.by("The delivery date must be in the future.",
-                            out.getPurchaseOrder().getDeliveryDate().toInstant().isAfter(time));*/
+                    // The kyc's own rules, buyer and seller included, are checked by KYCValidator in verify.
 
                     return null;
                 });
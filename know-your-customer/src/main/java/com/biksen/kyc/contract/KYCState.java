@@ -1,20 +1,20 @@
 package com.biksen.kyc.contract;
 
-import static java.util.stream.Collectors.toList;
-
-import java.lang.reflect.Constructor;
 import java.security.PublicKey;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Objects;
 import java.util.Set;
 import java.util.UUID;
 
 import net.corda.core.contracts.Command;
 import net.corda.core.contracts.DealState;
-import net.corda.core.contracts.TransactionType;
 import net.corda.core.contracts.UniqueIdentifier;
 import net.corda.core.crypto.CompositeKey;
 import net.corda.core.crypto.Party;
+import net.corda.core.crypto.SecureHash;
 import net.corda.core.transactions.TransactionBuilder;
 
 import com.biksen.kyc.contract.KYCContract.Commands.Place;
@@ -27,71 +27,140 @@ public class KYCState implements DealState {
     private final Party seller;
     private final KYCContract contract;
     private final UniqueIdentifier linearId;
+    private final SecureHash attachment;
+    // Derived from buyer and seller on first use; safe to compute more than once, so no locking.
+    private transient volatile List<CompositeKey> participants;
+    private transient volatile Set<PublicKey> participantKeys;
 
     public KYCState(KYC kyc,
                     Party buyer,
                     Party seller,
                     KYCContract contract)
     {
+        this(kyc, buyer, seller, contract, new UniqueIdentifier(
+                Integer.toString(kyc.getKycId()),
+                UUID.randomUUID()), null);
+    }
+
+    KYCState(KYC kyc, Party buyer, Party seller, KYCContract contract, UniqueIdentifier linearId,
+             SecureHash attachment) {
         this.kyc = kyc;
         this.buyer = buyer;
         this.seller = seller;
         this.contract = contract;
-        this.linearId = new UniqueIdentifier(
-                Integer.toString(kyc.getKycId()),
-                UUID.randomUUID());
+        this.linearId = linearId;
+        this.attachment = attachment;
+    }
+
+    /**
+     * Returns a copy of this state, with the same linear id, whose agreement transaction also carries the given
+     * attachment (the customer's document bundle).
+     */
+    public KYCState withAttachment(SecureHash attachment) {
+        return new KYCState(kyc, buyer, seller, contract, linearId, attachment);
     }
 
     public KYC getKYC() { return kyc; }
     public Party getBuyer() { return buyer; }
     public Party getSeller() { return seller; }
+    public SecureHash getAttachment() { return attachment; }
     @Override public KYCContract getContract() { return contract; }
     @Override public UniqueIdentifier getLinearId() { return linearId; }
     @Override public String getRef() { return linearId.getExternalId(); }
     @Override public List<Party> getParties() { return Arrays.asList(buyer, seller); }
     @Override public List<CompositeKey> getParticipants() {
-        return getParties()
-                .stream()
-                .map(Party::getOwningKey)
-                .collect(toList());
+        List<CompositeKey> participants = this.participants;
+        if (participants == null) {
+            participants = Collections.unmodifiableList(Arrays.asList(buyer.getOwningKey(), seller.getOwningKey()));
+            this.participants = participants;
+        }
+        return participants;
     }
 
-    
+    /**
+     * Returns true if any of our keys is one of the participants' keys. Scans whichever of the two key sets is smaller
+     * and probes the other.
+     */
     @Override public boolean isRelevant(Set<? extends PublicKey> ourKeys) {
-        final List<PublicKey> partyKeys = getParties()
-                .stream()
-                .flatMap(party -> party.getOwningKey().getKeys().stream())
-                .collect(toList());
-        return ourKeys
-                .stream()
-                .anyMatch(partyKeys::contains);
+        final Set<PublicKey> keys = participantKeys();
+        if (ourKeys.size() < keys.size()) {
+            for (PublicKey key : ourKeys) {
+                if (keys.contains(key)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        for (PublicKey key : keys) {
+            if (ourKeys.contains(key)) {
+                return true;
+            }
+        }
+        return false;
+    }
 
+    private Set<PublicKey> participantKeys() {
+        Set<PublicKey> keys = participantKeys;
+        if (keys == null) {
+            keys = new HashSet<>(buyer.getOwningKey().getKeys());
+            keys.addAll(seller.getOwningKey().getKeys());
+            participantKeys = keys;
+        }
+        return keys;
     }
 
     
     @Override public TransactionBuilder generateAgreement(Party notary) {
-        /*return new TransactionType.General().Builder(notary)
-                .withItems(this, new Command(new Place(), getParticipants()));*/    	
-    	
-    	Class memberClasses[] = TransactionType.General.class.getDeclaredClasses();    	
-    	
-    	Class classDefinition = memberClasses[0];
-    	
-    	TransactionBuilder builder = null;
-    	try{
-    		Constructor cons = classDefinition.getConstructor(Party.class);    		
-    		Object obj = cons.newInstance(notary);
-    		
-    		TransactionBuilder tempBuilder = (TransactionBuilder) obj;
-    		builder = tempBuilder.withItems(this, new Command(new Place(), getParticipants()));
-    		
-    		
-    	}catch(Exception e){
-    		e.printStackTrace();
-    	} 
-    	
-    	return builder;    	
-    	
-    }    
-    
+        final TransactionBuilder builder = TransactionBuilderFactory.newBuilder(notary)
+                .withItems(this, new Command(new Place(), getParticipants()));
+        if (attachment != null) {
+            builder.addAttachment(attachment);
+        }
+        return builder;
+    }
+
+    /**
+     * Generates a single transaction issuing all of the given states under one [Place] command. The states must all be
+     * between the same buyer and seller, as the command is signed by the participants of the first one.
+     */
+    public static TransactionBuilder generateAgreement(List<KYCState> states, Party notary) {
+        final TransactionBuilder builder = states.get(0).generateAgreement(notary);
+        for (int i = 1; i < states.size(); i++) {
+            final KYCState state = states.get(i);
+            if (!state.getBuyer().equals(states.get(0).getBuyer()) || !state.getSeller().equals(states.get(0).getSeller())) {
+                throw new IllegalArgumentException("All states in a kyc batch must have the same buyer and seller.");
+            }
+            builder.addOutputState(state, notary);
+            if (state.getAttachment() != null && !builder.attachments().contains(state.getAttachment())) {
+                builder.addAttachment(state.getAttachment());
+            }
+        }
+        return builder;
+    }
+
+    /**
+     * States are equal when they issue the same kyc, between the same parties, under the same linear id and with the
+     * same attachment. Lets an initiator check that a counterparty's transaction holds exactly what was proposed.
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof KYCState)) {
+            return false;
+        }
+        final KYCState other = (KYCState) o;
+        return Objects.equals(kyc, other.kyc)
+                && Objects.equals(buyer, other.buyer)
+                && Objects.equals(seller, other.seller)
+                && Objects.equals(linearId, other.linearId)
+                && Objects.equals(attachment, other.attachment)
+                && (contract == null ? other.contract == null : other.contract != null && contract.getClass() == other.contract.getClass());
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(kyc, linearId);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,61 @@
+package com.biksen.kyc.contract;
+
+import java.util.UUID;
+
+import net.corda.core.contracts.UniqueIdentifier;
+import net.corda.core.crypto.Party;
+import net.corda.core.crypto.SecureHash;
+
+import com.biksen.kyc.model.KYC;
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.Serializer;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+
+/**
+ * Compact Kryo encoding of [KYCState].
+ *
+ * [KYCContract] holds no per-state data, so it is not written; every state read back shares one instance. The linear
+ * id's external id is the kycId unless set otherwise, so only the UUID is written in the usual case. The attachment
+ * hash, when present, is written as its 32 raw bytes.
+ *
+ * Like [KYCSerializer], this is registered for RPC only.
+ */
+public class KYCStateSerializer extends Serializer<KYCState> {
+    private static final KYCContract CONTRACT = new KYCContract();
+    private static final int SHA256_LENGTH = 32;
+
+    private static final int HAS_ATTACHMENT = 1;
+    private static final int HAS_CUSTOM_EXTERNAL_ID = 2;
+
+    @Override
+    public void write(Kryo kryo, Output output, KYCState state) {
+        final UniqueIdentifier linearId = state.getLinearId();
+        final boolean customExternalId = !Integer.toString(state.getKYC().getKycId()).equals(linearId.getExternalId());
+        output.writeByte((state.getAttachment() != null ? HAS_ATTACHMENT : 0) | (customExternalId ? HAS_CUSTOM_EXTERNAL_ID : 0));
+
+        kryo.writeObject(output, state.getKYC());
+        kryo.writeObject(output, state.getBuyer());
+        kryo.writeObject(output, state.getSeller());
+        output.writeLong(linearId.getId().getMostSignificantBits());
+        output.writeLong(linearId.getId().getLeastSignificantBits());
+        if (customExternalId) {
+            output.writeString(linearId.getExternalId());
+        }
+        if (state.getAttachment() != null) {
+            output.writeBytes(state.getAttachment().getBytes());
+        }
+    }
+
+    @Override
+    public KYCState read(Kryo kryo, Input input, Class<KYCState> type) {
+        final int flags = input.readByte();
+        final KYC kyc = kryo.readObject(input, KYC.class);
+        final Party buyer = kryo.readObject(input, Party.class);
+        final Party seller = kryo.readObject(input, Party.class);
+        final UUID id = new UUID(input.readLong(), input.readLong());
+        final String externalId = (flags & HAS_CUSTOM_EXTERNAL_ID) != 0 ? input.readString() : Integer.toString(kyc.getKycId());
+        final SecureHash attachment = (flags & HAS_ATTACHMENT) != 0 ? new SecureHash.SHA256(input.readBytes(SHA256_LENGTH)) : null;
+        return new KYCState(kyc, buyer, seller, CONTRACT, new UniqueIdentifier(externalId, id), attachment);
+    }
+}
@@ -0,0 +1,183 @@
+package com.biksen.kyc.contract;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import net.corda.core.contracts.ContractState;
+
+import com.biksen.kyc.model.KYC;
+
+/**
+ * The domain rules every issued [KYCState] must satisfy, checked by [KYCContract.verify] over all of a transaction's
+ * outputs at once.
+ *
+ * Per-state rules are a table of [Rule]s, each evaluated against every state in a single pass. Rules spanning the
+ * transaction (kycId uniqueness) are checked after that pass: pairwise for up to [PAIRWISE_LIMIT] states, otherwise by
+ * sorting a copy of the ids. Unless a rule fails, nothing is allocated for transactions of up to [PAIRWISE_LIMIT]
+ * states; larger batches allocate one int[] per call. All failures are collected and reported together rather than
+ * stopping at the first.
+ */
+public final class KYCValidator {
+    public static final int MAX_ID_LENGTH = 64;
+    public static final int PAIRWISE_LIMIT = 64;
+
+    /**
+     * A named per-state rule.
+     */
+    public static final class Rule {
+        private final String description;
+        private final Check check;
+
+        private Rule(String description, Check check) {
+            this.description = description;
+            this.check = check;
+        }
+
+        public String getDescription() { return description; }
+    }
+
+    private interface Check {
+        boolean holds(KYCState state, KYC kyc);
+    }
+
+    private static final Rule[] RULES = {
+            new Rule("The buyer and the seller cannot be the same entity.",
+                    (state, kyc) -> !state.getBuyer().equals(state.getSeller())),
+            new Rule("The kyc date must be set.",
+                    (state, kyc) -> kyc.getKycDateEpochDay() != KYC.NO_DATE),
+            new Rule("The kyc valid date must be after the kyc date.",
+                    (state, kyc) -> kyc.getKycValidDateEpochDay() != KYC.NO_DATE
+                            && kyc.getKycValidDateEpochDay() > kyc.getKycDateEpochDay()),
+            new Rule("The user id must be 1-64 letters, digits or . _ - @.",
+                    (state, kyc) -> isWellFormed(kyc.getUserId(), "._-@")),
+            new Rule("The document id must be 1-64 letters, digits or - /.",
+                    (state, kyc) -> isWellFormed(kyc.getDocId(), "-/")),
+    };
+
+    private KYCValidator() {}
+
+    public static List<Rule> getRules() {
+        return Collections.unmodifiableList(Arrays.asList(RULES));
+    }
+
+    /**
+     * Checks the [KYCState]s among the given states and returns a description of every failure, or an empty list.
+     */
+    public static List<String> validate(List<? extends ContractState> states) {
+        List<String> failures = null;
+        int count = 0;
+
+        // Indexed rather than iterated, so no iterator is allocated.
+        for (int i = 0; i < states.size(); i++) {
+            final ContractState data = states.get(i);
+            if (!(data instanceof KYCState)) {
+                continue;
+            }
+            final KYCState state = (KYCState) data;
+            final KYC kyc = state.getKYC();
+            if (kyc == null) {
+                failures = add(failures, "A kyc state must hold a kyc.");
+                continue;
+            }
+            for (Rule rule : RULES) {
+                if (!rule.check.holds(state, kyc)) {
+                    failures = add(failures, "kycId " + kyc.getKycId() + ": " + rule.description);
+                }
+            }
+            count++;
+        }
+
+        if (count > 1) {
+            failures = states.size() <= PAIRWISE_LIMIT ? checkUniquePairwise(states, failures) : checkUniqueSorted(states, count, failures);
+        }
+        return failures == null ? Collections.emptyList() : failures;
+    }
+
+    /**
+     * Reports each duplicated kycId once, at its first occurrence.
+     */
+    private static List<String> checkUniquePairwise(List<? extends ContractState> states, List<String> failures) {
+        outer:
+        for (int i = 0; i < states.size(); i++) {
+            final KYC kyc = kycAt(states, i);
+            if (kyc == null) {
+                continue;
+            }
+            for (int j = 0; j < i; j++) {
+                final KYC earlier = kycAt(states, j);
+                if (earlier != null && earlier.getKycId() == kyc.getKycId()) {
+                    continue outer;
+                }
+            }
+            for (int j = i + 1; j < states.size(); j++) {
+                final KYC later = kycAt(states, j);
+                if (later != null && later.getKycId() == kyc.getKycId()) {
+                    failures = add(failures, duplicate(kyc.getKycId()));
+                    break;
+                }
+            }
+        }
+        return failures;
+    }
+
+    /**
+     * Sorting the ids once beats comparing every pair on large batches.
+     */
+    private static List<String> checkUniqueSorted(List<? extends ContractState> states, int count, List<String> failures) {
+        final int[] kycIds = new int[count];
+        int n = 0;
+        for (int i = 0; i < states.size(); i++) {
+            final KYC kyc = kycAt(states, i);
+            if (kyc != null) {
+                kycIds[n++] = kyc.getKycId();
+            }
+        }
+        Arrays.sort(kycIds);
+        for (int i = 1; i < n; i++) {
+            if (kycIds[i] == kycIds[i - 1] && (i == 1 || kycIds[i] != kycIds[i - 2])) {
+                failures = add(failures, duplicate(kycIds[i]));
+            }
+        }
+        return failures;
+    }
+
+    private static KYC kycAt(List<? extends ContractState> states, int i) {
+        final ContractState data = states.get(i);
+        return data instanceof KYCState ? ((KYCState) data).getKYC() : null;
+    }
+
+    private static String duplicate(int kycId) {
+        return "kycId " + kycId + ": The kyc id must be unique within the transaction.";
+    }
+
+    /**
+     * @throws IllegalArgumentException listing every failed rule, if any rule fails.
+     */
+    public static void requireValid(List<? extends ContractState> states) {
+        final List<String> failures = validate(states);
+        if (!failures.isEmpty()) {
+            throw new IllegalArgumentException("Failed requirements: " + String.join(" ", failures));
+        }
+    }
+
+    private static List<String> add(List<String> failures, String failure) {
+        final List<String> list = failures == null ? new ArrayList<>() : failures;
+        list.add(failure);
+        return list;
+    }
+
+    private static boolean isWellFormed(String id, String allowedPunctuation) {
+        if (id == null || id.isEmpty() || id.length() > MAX_ID_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < id.length(); i++) {
+            final char c = id.charAt(i);
+            if (!(c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9' || allowedPunctuation.indexOf(c) >= 0)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,56 @@
+package com.biksen.kyc.contract;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+import net.corda.core.contracts.TransactionType;
+import net.corda.core.crypto.Party;
+import net.corda.core.transactions.TransactionBuilder;
+
+/**
+ * Creates general [TransactionBuilder]s for the KYC CorDapp.
+ *
+ * The builder constructor nested in [TransactionType.General] is looked up once, by type rather than by its position
+ * among the declared classes, and kept as a [MethodHandle]. Resolution happens when this class is initialised, which
+ * [ensureResolved] forces at plugin load, so an incompatible Corda version fails there instead of mid-flow.
+ */
+public final class TransactionBuilderFactory {
+    private static final MethodHandle GENERAL_BUILDER = resolveGeneralBuilder();
+
+    private TransactionBuilderFactory() {}
+
+    /**
+     * Returns a new general transaction builder using the given notary.
+     */
+    public static TransactionBuilder newBuilder(Party notary) {
+        try {
+            return (TransactionBuilder) GENERAL_BUILDER.invokeExact(notary);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IllegalStateException("Failed to create a transaction builder.", t);
+        }
+    }
+
+    /**
+     * Does nothing beyond triggering class initialisation, which resolves the builder constructor.
+     */
+    public static void ensureResolved() {}
+
+    private static MethodHandle resolveGeneralBuilder() {
+        for (Class<?> nested : TransactionType.General.class.getDeclaredClasses()) {
+            if (!TransactionBuilder.class.isAssignableFrom(nested)) {
+                continue;
+            }
+            try {
+                return MethodHandles.publicLookup()
+                        .findConstructor(nested, MethodType.methodType(void.class, Party.class))
+                        .asType(MethodType.methodType(TransactionBuilder.class, Party.class));
+            } catch (NoSuchMethodException | IllegalAccessException e) {
+                throw new IllegalStateException("Cannot resolve the constructor of " + nested.getName(), e);
+            }
+        }
+        throw new IllegalStateException("TransactionType.General declares no TransactionBuilder.");
+    }
+}
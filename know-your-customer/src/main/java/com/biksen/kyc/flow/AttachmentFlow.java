@@ -1,22 +1,29 @@
 package com.biksen.kyc.flow;
 
 import java.security.KeyPair;
+import java.security.PublicKey;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Set;
+import java.util.List;
 
 import net.corda.core.contracts.DealState;
 import net.corda.core.contracts.TransactionState;
+import net.corda.core.crypto.DigitalSignature;
 import net.corda.core.crypto.Party;
+import net.corda.core.crypto.SecureHash;
 import net.corda.core.flows.FlowLogic;
 import net.corda.core.transactions.SignedTransaction;
 import net.corda.core.transactions.TransactionBuilder;
-import net.corda.flows.BroadcastTransactionFlow;
+import net.corda.core.transactions.WireTransaction;
+import net.corda.flows.ResolveTransactionsFlow;
 import co.paralleluniverse.fibers.Suspendable;
 
+import com.biksen.kyc.attachment.AttachmentReport;
+import com.biksen.kyc.attachment.AttachmentVerifier;
 import com.biksen.kyc.contract.KYCState;
-import com.google.common.collect.ImmutableSet;
+import com.biksen.kyc.contract.TransactionBuilderFactory;
 
 
 public class AttachmentFlow {
@@ -24,12 +31,25 @@ public class AttachmentFlow {
 
     	private Party counterParty;
     	private SignedTransaction signedTx;       
+        private List<SecureHash> attachments;
 
         public Initiator(SignedTransaction signedTx, Party counterParty) {
             this.signedTx = signedTx;
             this.counterParty = counterParty;
         }       
 
+        /**
+         * Sends one transaction referencing all the given attachments, which must already be uploaded to this node.
+         * Lets a bulk sender move many document bundles per flow.
+         */
+        public Initiator(ArrayList<SecureHash> attachments, Party counterParty) {
+            if (attachments.isEmpty()) {
+                throw new IllegalArgumentException("At least one attachment must be sent.");
+            }
+            this.attachments = attachments;
+            this.counterParty = counterParty;
+        }
+
         /**
          * This is the initiator flow. The flow logic is encapsulated within the call() method.
          */
@@ -38,17 +58,41 @@ public class AttachmentFlow {
 		public AttachmentFlowResult call() {
 
 			try {
-				
-			     final Set<Party> participants = ImmutableSet.of(counterParty);		        
-		             subFlow(new BroadcastTransactionFlow(signedTx, participants),false);
+			     if (signedTx == null) {
+			         signedTx = attachmentTransaction();
+			     }
 
-		             return new AttachmentFlowResult.Success("Transaction successfull at Initiator side.....");
+			     // The acceptor resolves and checks every attachment, and answers with its verdict on each
+			     return sendAndReceive(AttachmentFlowResult.class, counterParty, signedTx).unwrap(data -> data);
 			} catch (Exception ex) {
 			     return new AttachmentFlowResult.Failure("Transaction failed at Initiator side....."+ex.getMessage());
 			}
 		}
+
+        private SignedTransaction attachmentTransaction() {
+            final Party notary = getServiceHub().getNetworkMapCache().getNotaryNodes().get(0).getNotaryIdentity();
+            final TransactionBuilder builder = TransactionBuilderFactory.newBuilder(notary);
+            for (SecureHash attachment : attachments) {
+                if (getServiceHub().getStorageService().getAttachments().openAttachment(attachment) == null) {
+                    throw new IllegalArgumentException("This node does not hold attachment " + attachment + ".");
+                }
+                if (!builder.attachments().contains(attachment)) {
+                    builder.addAttachment(attachment);
+                }
+            }
+            builder.signWith(getServiceHub().getLegalIdentityKey());
+            return builder.toSignedTransaction(true);
+        }
     }
 
+    /**
+     * Receives the initiator's transaction, which must be signed by the initiator and carry nothing but attachments: no
+     * inputs, outputs or commands, so recording it cannot change the vault. Resolves and verifies it, fetching any
+     * attachments this node does not hold yet (the fetch checks each against its hash), then runs [AttachmentVerifier]
+     * over all of them: size limits, hash and zip integrity. The transaction is recorded only if every attachment
+     * passes. Either way the initiator gets the same [AttachmentFlowResult], listing each attachment with its size and
+     * verification time.
+     */
     public static class Acceptor extends FlowLogic<AttachmentFlowResult> {
 
         private final Party otherParty;        
@@ -60,25 +104,69 @@ public class AttachmentFlow {
         @Suspendable
         @Override 
         public AttachmentFlowResult call() {
+            AttachmentFlowResult result;
             try {
-            	
-            	  final SignedTransaction ntx = this.sendAndReceive(SignedTransaction.class, otherParty, otherParty.getOwningKey())
-                          .unwrap(data -> data);                
-                  ntx.verifySignatures();
-                
-            	  return new AttachmentFlowResult.Success("Transaction successfull at Acceptor side..........");
+                final SignedTransaction stx = this.receive(SignedTransaction.class, otherParty)
+                        .unwrap(data -> data);
+                final WireTransaction wtx = checkAttachmentsOnly(stx);
+
+                // Verifies the transaction itself as well as its dependencies.
+                subFlow(new ResolveTransactionsFlow(stx, otherParty), false);
+
+                // Size limits are checked before anything is hashed; see AttachmentVerifier.
+                final List<AttachmentReport> reports =
+                        AttachmentVerifier.verifyAll(wtx.getAttachments(), getServiceHub().getStorageService().getAttachments());
+
+                final long failed = reports.stream().filter(report -> !report.isVerified()).count();
+                if (failed == 0) {
+                    getServiceHub().recordTransactions(Collections.singletonList(stx));
+                    result = new AttachmentFlowResult.Success(
+                            String.format("Transaction id %s recorded with %d verified attachments.", stx.getId(), reports.size()), reports);
+                } else {
+                    result = new AttachmentFlowResult.Failure(
+                            String.format("Transaction id %s rejected: %d of %d attachments failed verification.", stx.getId(), failed, reports.size()), reports);
+                }
             } catch (Exception ex) {
-            	  return new AttachmentFlowResult.Failure("Transaction failed at Acceptor side....."+ex.getMessage());
+                result = new AttachmentFlowResult.Failure("Transaction failed at Acceptor side....."+ex.getMessage());
+            }
+            send(otherParty, result);
+            return result;
+        }
+
+        private WireTransaction checkAttachmentsOnly(SignedTransaction stx) {
+            final WireTransaction wtx = stx.verifySignatures();
+            final List<PublicKey> signers = new ArrayList<>(stx.getSigs().size());
+            for (DigitalSignature.WithKey sig : stx.getSigs()) {
+                signers.add(sig.getBy());
+            }
+            if (!otherParty.getOwningKey().isFulfilledBy(signers)) {
+                throw new IllegalArgumentException("The transaction is not signed by " + otherParty.getName() + ".");
             }
+            if (!wtx.getInputs().isEmpty() || !wtx.getOutputs().isEmpty() || !wtx.getCommands().isEmpty()) {
+                throw new IllegalArgumentException("An attachment transaction must not have inputs, outputs or commands.");
+            }
+            return wtx;
         }
     }
 
+    /**
+     * The outcome of sending attachments, with a report for each attachment the acceptor checked.
+     */
     public static class AttachmentFlowResult {
+        protected List<AttachmentReport> attachments = new ArrayList<>();
+
+        public List<AttachmentReport> getAttachments() { return attachments; }
+
         public static class Success extends com.biksen.kyc.flow.AttachmentFlow.AttachmentFlowResult {
             private String message;
 
             private Success(String message) { this.message = message; }
 
+            private Success(String message, List<AttachmentReport> attachments) {
+                this.message = message;
+                this.attachments = new ArrayList<>(attachments);
+            }
+
             @Override
             public String toString() { return String.format("Success(%s)", message); }
         }
@@ -88,6 +176,11 @@ public class AttachmentFlow {
 
             private Failure(String message) { this.message = message; }
 
+            private Failure(String message, List<AttachmentReport> attachments) {
+                this.message = message;
+                this.attachments = new ArrayList<>(attachments);
+            }
+
             @Override
             public String toString() { return String.format("Failure(%s)", message); }
         }
@@ -2,50 +2,138 @@ package com.biksen.kyc.flow;
 
 import static kotlin.collections.CollectionsKt.single;
 
-import java.io.File;
-import java.io.FileOutputStream;
-import java.io.InputStream;
-import java.io.OutputStream;
-import java.lang.reflect.Constructor;
-import java.nio.file.Path;
 import java.security.KeyPair;
 import java.time.Duration;
-import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Set;
+import java.util.List;
 
 import net.corda.core.contracts.ContractState;
-import net.corda.core.contracts.DealState;
 import net.corda.core.contracts.TransactionState;
-import net.corda.core.contracts.TransactionType;
 import net.corda.core.crypto.CompositeKey;
 import net.corda.core.crypto.CryptoUtilities;
 import net.corda.core.crypto.DigitalSignature;
 import net.corda.core.crypto.Party;
-import net.corda.core.crypto.SecureHash;
 import net.corda.core.flows.FlowLogic;
 import net.corda.core.transactions.SignedTransaction;
 import net.corda.core.transactions.TransactionBuilder;
 import net.corda.core.transactions.WireTransaction;
 import net.corda.core.utilities.ProgressTracker;
-import net.corda.flows.BroadcastTransactionFlow;
 import net.corda.flows.NotaryFlow;
-import net.corda.node.services.persistence.NodeAttachmentService;
+import net.corda.flows.ResolveTransactionsFlow;
 import co.paralleluniverse.fibers.Suspendable;
 
 import com.biksen.kyc.contract.KYCState;
-import com.google.common.collect.ImmutableSet;
 
 
 public class KYCFlow {
-    public static class Initiator extends FlowLogic<KYCFlowResult> {
-    	
-    	
-
+    private static final ProgressTracker.Step CONSTRUCTING_OFFER = KYCFlowMetrics.step(
+            "CONSTRUCTING_OFFER", "Constructing proposed kyc.");
+    private static final ProgressTracker.Step SENDING_OFFER_AND_RECEIVING_PARTIAL_TRANSACTION = KYCFlowMetrics.step(
+            "SENDING_OFFER_AND_RECEIVING_PARTIAL_TRANSACTION",
+            "Sending kyc to other party for review, and receiving partially signed transaction from other party in return.");
+    private static final ProgressTracker.Step VERIFYING = KYCFlowMetrics.step(
+            "VERIFYING", "Verifying signatures and contract constraints.");
+    private static final ProgressTracker.Step SIGNING = KYCFlowMetrics.step(
+            "SIGNING", "Signing transaction with our private key.");
+    private static final ProgressTracker.Step NOTARY = KYCFlowMetrics.step(
+            "NOTARY", "Obtaining notary signature.");
+    private static final ProgressTracker.Step RECORDING = KYCFlowMetrics.step(
+            "RECORDING", "Recording transaction in vault.");
+    private static final ProgressTracker.Step SENDING_FINAL_TRANSACTION = KYCFlowMetrics.step(
+            "SENDING_FINAL_TRANSACTION", "Sending fully signed transaction to other party.");
+
+    private static final ProgressTracker.Step WAIT_FOR_AND_RECEIVE_PROPOSAL = KYCFlowMetrics.step(
+            "WAIT_FOR_AND_RECEIVE_PROPOSAL", "Receiving proposed kyc from initiator.");
+    private static final ProgressTracker.Step GENERATING_TRANSACTION = KYCFlowMetrics.step(
+            "GENERATING_TRANSACTION", "Generating transaction based on proposed kyc.");
+    private static final ProgressTracker.Step SIGNING_PROPOSAL = KYCFlowMetrics.step(
+            "SIGNING_PROPOSAL", "Signing proposed transaction with our private key.");
+    private static final ProgressTracker.Step SEND_TRANSACTION_AND_WAIT_FOR_RESPONSE = KYCFlowMetrics.step(
+            "SEND_TRANSACTION_AND_WAIT_FOR_RESPONSE",
+            "Sending partially signed transaction to initiator and wait for a response.");
+
+    public static class Initiator extends AbstractInitiator {
         private final KYCState kycState;
-        private final Party otherParty;
         private net.corda.core.crypto.SecureHash.SHA256 attachmentHashValue;
-        
+
+        public Initiator(KYCState kycState, Party otherParty) {
+            this(kycState, otherParty, null);
+        }
+
+        public Initiator(KYCState kycState, Party otherParty, net.corda.core.crypto.SecureHash.SHA256 attachmentHashValue) {
+            super("KYCFlow.Initiator", otherParty);
+            this.kycState = kycState;
+            this.attachmentHashValue = attachmentHashValue;
+        }
+
+        @Override protected List<KYCState> proposedStates() {
+            // The document bundle travels in the kyc transaction itself; the acceptor fetches it while resolving.
+            return Collections.singletonList(attachmentHashValue == null ? kycState : kycState.withAttachment(attachmentHashValue));
+        }
+
+        @Override protected Object offer(ArrayList<TransactionState<ContractState>> proposed) {
+            return proposed.get(0);
+        }
+    }
+
+    public static class Acceptor extends AbstractAcceptor {
+        public Acceptor(Party otherParty) {
+            super("KYCFlow.Acceptor", otherParty);
+        }
+
+        @Suspendable
+        @Override protected List<TransactionState<ContractState>> receiveProposal() {
+            final TransactionState<ContractState> message = this.receive(TransactionState.class, otherParty)
+                    .unwrap(data -> (TransactionState<ContractState>) data);
+            final ArrayList<TransactionState<ContractState>> proposal = new ArrayList<>(1);
+            proposal.add(message);
+            return proposal;
+        }
+    }
+
+    /**
+     * Issues a batch of [KYCState]s with the same counterparty in a single transaction, so the whole batch shares one
+     * counterparty round trip, one notarisation and one vault write. Each state is still verified in its own group by
+     * [KYCContract.Clauses.Group].
+     */
+    public static class BatchInitiator extends AbstractInitiator {
+        private final List<KYCState> kycStates;
+
+        public BatchInitiator(ArrayList<KYCState> kycStates, Party otherParty) {
+            super("KYCFlow.BatchInitiator", otherParty);
+            this.kycStates = kycStates;
+        }
+
+        @Override protected List<KYCState> proposedStates() {
+            return kycStates;
+        }
+
+        @Override protected Object offer(ArrayList<TransactionState<ContractState>> proposed) {
+            return proposed;
+        }
+    }
+
+    public static class BatchAcceptor extends AbstractAcceptor {
+        public BatchAcceptor(Party otherParty) {
+            super("KYCFlow.BatchAcceptor", otherParty);
+        }
+
+        @Suspendable
+        @Override protected List<TransactionState<ContractState>> receiveProposal() {
+            return this.receive(ArrayList.class, otherParty)
+                    .unwrap(data -> (List<TransactionState<ContractState>>) data);
+        }
+    }
+
+    /**
+     * The initiating side shared by [Initiator] and [BatchInitiator]: offers the states, checks that the transaction
+     * the acceptor returns issues exactly those states and consumes nothing, then signs, notarises, records it and
+     * sends it back.
+     */
+    abstract static class AbstractInitiator extends FlowLogic<KYCFlowResult> {
+        protected final Party otherParty;
+        private final KYCFlowMetrics.StepTimer timer;
         private final ProgressTracker progressTracker = new ProgressTracker(
                 CONSTRUCTING_OFFER,
                 SENDING_OFFER_AND_RECEIVING_PARTIAL_TRANSACTION,
@@ -56,193 +144,168 @@ public class KYCFlow {
                 SENDING_FINAL_TRANSACTION
         );
 
-        private static final ProgressTracker.Step CONSTRUCTING_OFFER = new ProgressTracker.Step(
-                "Constructing proposed kyc.");
-        private static final ProgressTracker.Step SENDING_OFFER_AND_RECEIVING_PARTIAL_TRANSACTION = new ProgressTracker.Step(
-                "Sending kyc to other party for review, and receiving partially signed transaction from other party in return.");
-        private static final ProgressTracker.Step VERIFYING = new ProgressTracker.Step(
-                "Verifying signatures and contract constraints.");
-        private static final ProgressTracker.Step SIGNING = new ProgressTracker.Step(
-                "Signing transaction with our private key.");
-        private static final ProgressTracker.Step NOTARY = new ProgressTracker.Step(
-                "Obtaining notary signature.");
-        private static final ProgressTracker.Step RECORDING = new ProgressTracker.Step(
-                "Recording transaction in vault.");
-        private static final ProgressTracker.Step SENDING_FINAL_TRANSACTION = new ProgressTracker.Step(
-                "Sending fully signed transaction to other party.");
-
-        public Initiator(KYCState kycState, Party otherParty, net.corda.core.crypto.SecureHash.SHA256 attachmentHashValue) {
-            this.kycState = kycState;
+        AbstractInitiator(String flowName, Party otherParty) {
             this.otherParty = otherParty;
-            this.attachmentHashValue = attachmentHashValue;
+            this.timer = new KYCFlowMetrics.StepTimer(flowName);
         }
 
         @Override public ProgressTracker getProgressTracker() { return progressTracker; }
 
+        /**
+         * The states to issue, in the order they must appear as outputs.
+         */
+        protected abstract List<KYCState> proposedStates();
+
+        /**
+         * The message the matching acceptor expects, built from the proposed states.
+         */
+        protected abstract Object offer(ArrayList<TransactionState<ContractState>> proposed);
+
         /**
          * The flow logic is encapsulated within the call() method.
          */
         @Suspendable
         @Override public KYCFlowResult call() {
-            
+            timer.start(getServiceHub().getMyInfo().getLegalIdentity().getName());
             try {
-                
-                final KeyPair myKeyPair = getServiceHub().getLegalIdentityKey();                
+                final KeyPair myKeyPair = getServiceHub().getLegalIdentityKey();
                 final Party notary = single(getServiceHub().getNetworkMapCache().getNotaryNodes()).getNotaryIdentity();
                 final CompositeKey notaryPubKey = notary.getOwningKey();
-                
-                
-               
 
                 // Stage 1.
-                progressTracker.setCurrentStep(CONSTRUCTING_OFFER);
-                
-                /** Add attachment logic - START */              
-                
-                Class memberClasses[] = TransactionType.General.class.getDeclaredClasses();     	
-            	Class classDefinition = memberClasses[0];    	
-            	TransactionBuilder builder = null;
-            	try{
-            		Constructor cons = classDefinition.getConstructor(Party.class);    		
-            		Object obj = cons.newInstance(otherParty);    		
-            		builder = (TransactionBuilder) obj;   		
-            	}catch(Exception e){
-            		e.printStackTrace();
-            	}             	
-            	builder.addAttachment(attachmentHashValue);
-            	builder.signWith(net.corda.testing.CoreTestUtils.getALICE_KEY());            	
-            	SignedTransaction stx = builder.toSignedTransaction(true);
-            	
-            	System.out.println("Sending attachment......"+stx.getId());             	
-            	
-            	final Set<Party> participants = ImmutableSet.of(otherParty);		        
-		        subFlow(new BroadcastTransactionFlow(stx, participants),false);  	
-            	
-                /** Add attachment logic - END */	        
-                
-                final TransactionState offerMessage = new TransactionState<ContractState>(kycState, notary);
+                timer.step(progressTracker, CONSTRUCTING_OFFER, otherParty);
+
+                final ArrayList<TransactionState<ContractState>> proposed = proposal(notary);
 
                 // Stage 2.
-                progressTracker.setCurrentStep(SENDING_OFFER_AND_RECEIVING_PARTIAL_TRANSACTION);
-                
+                timer.step(progressTracker, SENDING_OFFER_AND_RECEIVING_PARTIAL_TRANSACTION, otherParty);
+
                 // -----------------------
                 // Flow jumps to Acceptor.
                 // -----------------------
-               
-                final SignedTransaction ptx = sendAndReceive(SignedTransaction.class, otherParty, offerMessage)
+
+                final SignedTransaction ptx = sendAndReceive(SignedTransaction.class, otherParty, offer(proposed))
                         .unwrap(data -> data);
 
                 // Stage 7.
-                progressTracker.setCurrentStep(VERIFYING);
-               
+                timer.step(progressTracker, VERIFYING, otherParty);
+
                 final WireTransaction wtx = ptx.verifySignatures(CryptoUtilities.getComposite(myKeyPair.getPublic()), notaryPubKey);
-                
+                checkIssuesExactly(wtx, proposed);
                 wtx.toLedgerTransaction(getServiceHub()).verify();
 
                 // Stage 8.
-                progressTracker.setCurrentStep(SIGNING);
-                
+                timer.step(progressTracker, SIGNING, otherParty);
+
                 final DigitalSignature.WithKey mySig = CryptoUtilities.signWithECDSA(myKeyPair, ptx.getId().getBytes());
                 final SignedTransaction vtx = ptx.plus(mySig);
 
                 // Stage 9.
-                progressTracker.setCurrentStep(NOTARY);
-                
+                timer.step(progressTracker, NOTARY, otherParty);
+
                 final DigitalSignature.WithKey notarySignature = subFlow(new NotaryFlow.Client(vtx, NotaryFlow.Client.Companion.tracker()), false);
-               
                 final SignedTransaction ntx = vtx.plus(notarySignature);
 
                 // Stage 10.
-                progressTracker.setCurrentStep(RECORDING);
-                
+                timer.step(progressTracker, RECORDING, otherParty);
+
                 getServiceHub().recordTransactions(Collections.singletonList(ntx));
 
                 // Stage 11.
-                progressTracker.setCurrentStep(SENDING_FINAL_TRANSACTION);
-                
+                timer.step(progressTracker, SENDING_FINAL_TRANSACTION, otherParty);
+
                 send(otherParty, ntx);
                 //This will return to REST service
-                return new KYCFlowResult.Success(String.format("Transaction id %s committed to ledger.", ntx.getId()));
+                timer.finish(otherParty, true);
+                return new KYCFlowResult.Success(committed(ntx));
             } catch(Exception ex) {
-                
+                timer.finish(otherParty, false);
                 return new KYCFlowResult.Failure(ex.getMessage());
             }
         }
-    }
 
-    public static class Acceptor extends FlowLogic<KYCFlowResult> {
-    	
-    	private static final net.corda.core.crypto.SecureHash.SHA256 PROSPECTUS_HASH;
+        private ArrayList<TransactionState<ContractState>> proposal(Party notary) {
+            final List<KYCState> states = proposedStates();
+            final ArrayList<TransactionState<ContractState>> proposed = new ArrayList<>(states.size());
+            for (KYCState state : states) {
+                proposed.add(new TransactionState<ContractState>(state, notary));
+            }
+            return proposed;
+        }
 
-    	static {
-    		/** SHA-256 hash value of 'bank-of-london-cp.jar' file under src/main/resources */
-    		//PROSPECTUS_HASH = SecureHash.Companion.parse("decd098666b9657314870e192ced0c3519c2c9d395507a238338f8d003929de9");
-    		/** SHA-256 hash value of 'classmate-1.3.0.jar' file src/main/resources */
-    		//PROSPECTUS_HASH = SecureHash.Companion.parse("11F836B0F3EBA1544967317C052917C2987D78F0D1FB1E5A2BF93265174B9D77");
-    		/** SHA-256 hash value of 'R-3083.zip' file src/main/resources */
-    		PROSPECTUS_HASH = SecureHash.Companion.parse("8d88af2dbc7c224c912906815b3859cd8ec848b410d226c912cb12a2d2c20588");
-    	}
+        /**
+         * We are about to sign whatever the counterparty built, so it must hold exactly the states we proposed, in
+         * order, and must not spend anything.
+         */
+        private static void checkIssuesExactly(WireTransaction wtx, List<TransactionState<ContractState>> proposed) {
+            if (!wtx.getInputs().isEmpty()) {
+                throw new IllegalArgumentException("Counterparty returned a transaction that consumes states.");
+            }
+            if (!wtx.getOutputs().equals(proposed)) {
+                throw new IllegalArgumentException("Counterparty returned a transaction that does not issue the proposed kycs.");
+            }
+        }
+    }
 
-        private final Party otherParty;
+    /**
+     * The accepting side shared by [Acceptor] and [BatchAcceptor]: builds the agreement transaction for the proposed
+     * states, signs it, and records the final transaction once the initiator has had it notarised.
+     */
+    abstract static class AbstractAcceptor extends FlowLogic<KYCFlowResult> {
+        protected final Party otherParty;
+        private final KYCFlowMetrics.StepTimer timer;
         private final ProgressTracker progressTracker = new ProgressTracker(
                 WAIT_FOR_AND_RECEIVE_PROPOSAL,
                 GENERATING_TRANSACTION,
-                SIGNING,
+                SIGNING_PROPOSAL,
                 SEND_TRANSACTION_AND_WAIT_FOR_RESPONSE,
-                VERIFYING_TRANSACTION,
+                VERIFYING,
                 RECORDING
         );
 
-        private static final ProgressTracker.Step WAIT_FOR_AND_RECEIVE_PROPOSAL = new ProgressTracker.Step(
-                "Receiving proposed kyc from initiator.");
-        private static final ProgressTracker.Step GENERATING_TRANSACTION = new ProgressTracker.Step(
-                "Generating transaction based on proposed kyc.");
-        private static final ProgressTracker.Step SIGNING = new ProgressTracker.Step(
-                "Signing proposed transaction with our private key.");
-        private static final ProgressTracker.Step SEND_TRANSACTION_AND_WAIT_FOR_RESPONSE = new ProgressTracker.Step(
-                "Sending partially signed transaction to initiator and wait for a response.");
-        private static final ProgressTracker.Step VERIFYING_TRANSACTION = new ProgressTracker.Step(
-                "Verifying signatures and contract constraints.");
-        private static final ProgressTracker.Step RECORDING = new ProgressTracker.Step(
-                "Recording transaction in vault.");
-
-        public Acceptor(Party otherParty) {
+        AbstractAcceptor(String flowName, Party otherParty) {
             this.otherParty = otherParty;
+            this.timer = new KYCFlowMetrics.StepTimer(flowName);
         }
 
         @Override public ProgressTracker getProgressTracker() { return progressTracker; }
 
+        /**
+         * Receives the proposed states from the initiator.
+         */
+        @Suspendable
+        protected abstract List<TransactionState<ContractState>> receiveProposal();
+
         @Suspendable
         @Override public KYCFlowResult call() {
+            timer.start(getServiceHub().getMyInfo().getLegalIdentity().getName());
             try {
-                
                 final KeyPair keyPair = getServiceHub().getLegalIdentityKey();
 
                 // Stage 3.
-                progressTracker.setCurrentStep(WAIT_FOR_AND_RECEIVE_PROPOSAL);
-                
-                final TransactionState<DealState> message = this.receive(TransactionState.class, otherParty)
-                        .unwrap(data -> (TransactionState<DealState>) data );
-                
-                System.out.println("Received data at receiver side............."+((KYCState)message.getData()).getKYC());                
+                timer.step(progressTracker, WAIT_FOR_AND_RECEIVE_PROPOSAL, otherParty);
+
+                final List<TransactionState<ContractState>> message = receiveProposal();
 
                 // Stage 4.
-                progressTracker.setCurrentStep(GENERATING_TRANSACTION);                
-                
+                timer.step(progressTracker, GENERATING_TRANSACTION, otherParty);
+
                 // This will call "KYCState.generateAgreement()"
-                final TransactionBuilder utx = message.getData().generateAgreement(message.getNotary());
-                
-                final Instant currentTime = getServiceHub().getClock().instant();
-               
-                utx.setTime(currentTime, Duration.ofSeconds(30));              
+                final TransactionBuilder utx = agreement(message);
+                utx.setTime(getServiceHub().getClock().instant(), Duration.ofSeconds(30));
+
+                // Fetch any attached document bundle from the initiator, so it is checked before we sign
+                if (!utx.attachments().isEmpty()) {
+                    subFlow(new ResolveTransactionsFlow(utx.toWireTransaction(), otherParty), false);
+                }
 
                 // Stage 5.
-                progressTracker.setCurrentStep(SIGNING);
-                
+                timer.step(progressTracker, SIGNING_PROPOSAL, otherParty);
+
                 final SignedTransaction stx = utx.signWith(keyPair).toSignedTransaction(false);
 
                 // Stage 6.
-                progressTracker.setCurrentStep(SEND_TRANSACTION_AND_WAIT_FOR_RESPONSE);
+                timer.step(progressTracker, SEND_TRANSACTION_AND_WAIT_FOR_RESPONSE, otherParty);
                 // Send the state back across the wire to the designated counterparty.
                 // ------------------------
                 // Flow jumps to Initiator.
@@ -252,36 +315,45 @@ public class KYCFlow {
                         .unwrap(data -> data);
 
                 // Stage 12.
-                progressTracker.setCurrentStep(VERIFYING_TRANSACTION);
-                
+                timer.step(progressTracker, VERIFYING, otherParty);
+
                 ntx.verifySignatures();
                 // Check it's valid.
                 ntx.toLedgerTransaction(getServiceHub()).verify();
 
                 // Record the transaction.
-                progressTracker.setCurrentStep(RECORDING);
+                timer.step(progressTracker, RECORDING, otherParty);
                 getServiceHub().recordTransactions(Collections.singletonList(ntx));
-                
-                
-                /** Download attachment */		       
-		        System.out.println("Downloading attachment................");
-		        /*Path attachmentPath = ((NodeAttachmentService)getServiceHub().getStorageService().getAttachments()).getStorePath();		        
-		        File f = attachmentPath.toFile();		        
-		        File[] fileList = f.listFiles();
-		        for(int i=0;i<fileList.length;i++){
-		        	System.out.println("File complete path with file name........"+fileList[i].getAbsolutePath());
-		        	
-		        }*/
-		        InputStream in = ((NodeAttachmentService)getServiceHub().getStorageService().getAttachments()).openAttachment(PROSPECTUS_HASH).open();		        
-		        
-		        /** End download attachment */
-                
-                
-                return new KYCFlowResult.Success(String.format("Transaction id %s committed to ledger.", ntx.getId()));
+
+                timer.finish(otherParty, true);
+                return new KYCFlowResult.Success(committed(ntx));
             } catch (Exception ex) {
+                timer.finish(otherParty, false);
                 return new KYCFlowResult.Failure(ex.getMessage());
             }
         }
+
+        private static TransactionBuilder agreement(List<TransactionState<ContractState>> message) {
+            if (message.isEmpty()) {
+                throw new IllegalArgumentException("Received an empty kyc proposal.");
+            }
+            final Party notary = message.get(0).getNotary();
+            final List<KYCState> states = new ArrayList<>(message.size());
+            for (TransactionState<ContractState> proposed : message) {
+                if (!(proposed.getData() instanceof KYCState) || !proposed.getNotary().equals(notary)) {
+                    throw new IllegalArgumentException("A kyc proposal must only hold kyc states with the same notary.");
+                }
+                states.add((KYCState) proposed.getData());
+            }
+            return KYCState.generateAgreement(states, notary);
+        }
+    }
+
+    private static String committed(SignedTransaction ntx) {
+        final int kycs = ntx.getTx().getOutputs().size();
+        return kycs == 1
+                ? String.format("Transaction id %s committed to ledger.", ntx.getId())
+                : String.format("Transaction id %s committed %d kycs to ledger.", ntx.getId(), kycs);
     }
 
     public static class KYCFlowResult {
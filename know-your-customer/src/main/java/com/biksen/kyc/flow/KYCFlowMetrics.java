@@ -0,0 +1,160 @@
+package com.biksen.kyc.flow;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import net.corda.core.crypto.Party;
+import net.corda.core.utilities.ProgressTracker;
+
+import com.codahale.metrics.JmxReporter;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.Timer;
+
+/**
+ * Time spent in each [ProgressTracker] step of the KYC flows, per flow and per counterparty, so it is possible to tell
+ * whether the counterparty, the notary or the vault write dominates a slow flow.
+ *
+ * Timers are named "<flow>.<node>.<step key>" for all counterparties and "<flow>.<node>.<counterparty>.<step key>"
+ * for one, plus "<flow>.<node>.total" and "<flow>.<node>.success" / "<flow>.<node>.failure" meters. The step key is
+ * the short, stable name a step is declared with through [step], not its label, so rewording a step does not rename
+ * its timers. The node's name keeps apart the flows of nodes sharing a JVM, as in a mock network. The registry is
+ * published through JMX under the "com.biksen.kyc" domain once [startJmx] is called, and read by KYCApi's metrics
+ * endpoint.
+ */
+public final class KYCFlowMetrics {
+    public static final String JMX_DOMAIN = "com.biksen.kyc";
+
+    private static final MetricRegistry REGISTRY = new MetricRegistry();
+    private static final Map<ProgressTracker.Step, String> STEP_KEYS = new ConcurrentHashMap<>();
+    private static JmxReporter jmxReporter;
+
+    /**
+     * Times the steps of one flow. Flows hold one as a field, call [start] with their node's name, and move through
+     * their steps with [step] instead of setting the tracker's step directly.
+     *
+     * The clock readings are transient: a flow restored from a checkpoint, possibly in another JVM, does not record
+     * the step it was suspended in.
+     */
+    public static final class StepTimer {
+        private final String flow;
+        private String prefix;
+        private transient long startedAt;
+        private transient long stepStartedAt;
+        private transient String step;
+
+        public StepTimer(String flow) {
+            this.flow = flow;
+            this.prefix = flow;
+        }
+
+        /**
+         * Starts the flow's clock and names its metrics after the node running it.
+         */
+        public void start(String node) {
+            prefix = MetricRegistry.name(flow, node);
+            startedAt = System.nanoTime();
+        }
+
+        /**
+         * Records the time spent in the current step, against the counterparty as well, and moves the tracker on.
+         */
+        public void step(ProgressTracker tracker, ProgressTracker.Step next, Party counterparty) {
+            final long now = System.nanoTime();
+            if (step != null && stepStartedAt != 0) {
+                record(counterparty, step, now - stepStartedAt);
+            }
+            step = STEP_KEYS.getOrDefault(next, next.getLabel());
+            stepStartedAt = now;
+            tracker.setCurrentStep(next);
+        }
+
+        /**
+         * Records the last step, the flow's total time and its outcome.
+         */
+        public void finish(Party counterparty, boolean success) {
+            final long now = System.nanoTime();
+            if (step != null && stepStartedAt != 0) {
+                record(counterparty, step, now - stepStartedAt);
+            }
+            if (startedAt != 0) {
+                REGISTRY.timer(MetricRegistry.name(prefix, "total")).update(now - startedAt, TimeUnit.NANOSECONDS);
+            }
+            REGISTRY.meter(MetricRegistry.name(prefix, success ? "success" : "failure")).mark();
+            step = null;
+        }
+
+        private void record(Party counterparty, String key, long nanos) {
+            REGISTRY.timer(MetricRegistry.name(prefix, key)).update(nanos, TimeUnit.NANOSECONDS);
+            if (counterparty != null) {
+                REGISTRY.timer(MetricRegistry.name(prefix, counterparty.getName(), key)).update(nanos, TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
+    private KYCFlowMetrics() {}
+
+    /**
+     * Declares a progress step whose timers are named by the given key, e.g. "CONSTRUCTING_OFFER".
+     */
+    public static ProgressTracker.Step step(String key, String label) {
+        final ProgressTracker.Step step = new ProgressTracker.Step(label);
+        STEP_KEYS.put(step, key);
+        return step;
+    }
+
+    public static MetricRegistry getRegistry() { return REGISTRY; }
+
+    /**
+     * Publishes the registry through JMX. Only the first call has an effect.
+     */
+    public static synchronized void startJmx() {
+        if (jmxReporter == null) {
+            jmxReporter = JmxReporter.forRegistry(REGISTRY)
+                    .inDomain(JMX_DOMAIN)
+                    .convertDurationsTo(TimeUnit.MILLISECONDS)
+                    .build();
+            jmxReporter.start();
+        }
+    }
+
+    /**
+     * Returns count, mean and percentiles in milliseconds for every timer, and the count and one-minute rate of every
+     * meter, keyed by metric name. Names starting with the prefix are returned, or all of them if it is null.
+     */
+    public static Map<String, Object> snapshot(String prefix) {
+        final String filter = prefix == null ? "" : prefix;
+        final Map<String, Object> metrics = new LinkedHashMap<>();
+
+        final SortedMap<String, Timer> timers = REGISTRY.getTimers((name, metric) -> name.startsWith(filter));
+        for (Map.Entry<String, Timer> entry : timers.entrySet()) {
+            final Snapshot snapshot = entry.getValue().getSnapshot();
+            final Map<String, Object> timer = new LinkedHashMap<>();
+            timer.put("count", entry.getValue().getCount());
+            timer.put("meanMillis", millis(snapshot.getMean()));
+            timer.put("p50Millis", millis(snapshot.getMedian()));
+            timer.put("p95Millis", millis(snapshot.get95thPercentile()));
+            timer.put("p99Millis", millis(snapshot.get99thPercentile()));
+            timer.put("p999Millis", millis(snapshot.get999thPercentile()));
+            timer.put("maxMillis", millis(snapshot.getMax()));
+            metrics.put(entry.getKey(), timer);
+        }
+
+        final SortedMap<String, Meter> meters = REGISTRY.getMeters((name, metric) -> name.startsWith(filter));
+        for (Map.Entry<String, Meter> entry : meters.entrySet()) {
+            final Map<String, Object> meter = new LinkedHashMap<>();
+            meter.put("count", entry.getValue().getCount());
+            meter.put("oneMinuteRate", entry.getValue().getOneMinuteRate());
+            metrics.put(entry.getKey(), meter);
+        }
+        return metrics;
+    }
+
+    private static double millis(double nanos) {
+        return nanos / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+}
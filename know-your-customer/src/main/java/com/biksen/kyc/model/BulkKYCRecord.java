@@ -0,0 +1,28 @@
+package com.biksen.kyc.model;
+
+/**
+ * One entry of a bulk onboarding request: a KYC and the counterparty it is to be agreed with.
+ */
+public class BulkKYCRecord {
+	
+	private String counterparty;
+	private KYC kyc;
+	
+	public String getCounterparty() {
+		return counterparty;
+	}
+	public void setCounterparty(String counterparty) {
+		this.counterparty = counterparty;
+	}
+	public KYC getKyc() {
+		return kyc;
+	}
+	public void setKyc(KYC kyc) {
+		this.kyc = kyc;
+	}
+	@Override
+	public String toString() {
+		return "BulkKYCRecord [counterparty=" + counterparty + ", kyc=" + kyc + "]";
+	}
+
+}
@@ -1,60 +1,206 @@
 package com.biksen.kyc.model;
 
-import java.util.Date;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.Objects;
 
-public class KYC {
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.ToStringSerializer;
+
+/**
+ * An immutable kyc record. Dates are calendar dates, held as epoch days so a record is a handful of primitives and
+ * strings; in JSON they are "YYYY-MM-DD" strings.
+ */
+public final class KYC {
+	
+	/** Epoch day standing for an absent date. */
+	public static final int NO_DATE = Integer.MIN_VALUE;
+	
+	private final int kycId;
+	private final String userId;
+	private final String userName;
+	private final int kycDate;
+	private final int kycValidDate;
+	private final String docId;
+	// Cached hash code; transient, so Kryo's default field encoding leaves it out.
+	private transient int hash;
+	
+	KYC(int kycId, String userId, String userName, int kycDate, int kycValidDate, String docId) {
+		this.kycId = kycId;
+		this.userId = userId;
+		this.userName = userName;
+		this.kycDate = kycDate;
+		this.kycValidDate = kycValidDate;
+		this.docId = docId;
+	}
+	
+	/**
+	 * Binds a kyc from JSON. Dates are "YYYY-MM-DD"; a longer ISO timestamp is cut to its date, and a number is read as
+	 * epoch milliseconds (UTC), as java.util.Date fields used to accept.
+	 */
+	@JsonCreator
+	public static KYC fromJson(@JsonProperty("kycId") int kycId,
+							   @JsonProperty("userId") String userId,
+							   @JsonProperty("userName") String userName,
+							   @JsonProperty("kycDate") String kycDate,
+							   @JsonProperty("kycValidDate") String kycValidDate,
+							   @JsonProperty("docId") String docId) {
+		return new KYC(kycId, userId, userName, parseEpochDay(kycDate), parseEpochDay(kycValidDate), docId);
+	}
+	
+	public static Builder builder() {
+		return new Builder();
+	}
 	
-	private int kycId;
-	private String userId;
-	private String userName;
-	//"YYYY-MM-DD"
-	private Date kycDate;
-	private Date kycValidDate;
-	private String docId;
+	public Builder toBuilder() {
+		return new Builder()
+				.kycId(kycId)
+				.userId(userId)
+				.userName(userName)
+				.kycDateEpochDay(kycDate)
+				.kycValidDateEpochDay(kycValidDate)
+				.docId(docId);
+	}
 	
 	public int getKycId() {
 		return kycId;
 	}
-	public void setKycId(int kycId) {
-		this.kycId = kycId;
-	}
 	public String getUserId() {
 		return userId;
 	}
-	public void setUserId(String userId) {
-		this.userId = userId;
-	}
 	public String getUserName() {
 		return userName;
 	}
-	public void setUserName(String userName) {
-		this.userName = userName;
+	@JsonSerialize(using = ToStringSerializer.class)
+	public LocalDate getKycDate() {
+		return toLocalDate(kycDate);
 	}
-	public Date getKycDate() {
-		return kycDate;
+	@JsonSerialize(using = ToStringSerializer.class)
+	public LocalDate getKycValidDate() {
+		return toLocalDate(kycValidDate);
 	}
-	public void setKycDate(Date kycDate) {
-		this.kycDate = kycDate;
+	public String getDocId() {
+		return docId;
 	}
-	public Date getKycValidDate() {
-		return kycValidDate;
+	
+	/** The kyc date as an epoch day, or [NO_DATE]; does not allocate. */
+	@JsonIgnore
+	public int getKycDateEpochDay() {
+		return kycDate;
 	}
-	public void setKycValidDate(Date kycValidDate) {
-		this.kycValidDate = kycValidDate;
+	/** The kyc expiry date as an epoch day, or [NO_DATE]; does not allocate. */
+	@JsonIgnore
+	public int getKycValidDateEpochDay() {
+		return kycValidDate;
 	}
-	public String getDocId() {
-		return docId;
+	
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) {
+			return true;
+		}
+		if (!(o instanceof KYC)) {
+			return false;
+		}
+		final KYC other = (KYC) o;
+		return kycId == other.kycId
+				&& kycDate == other.kycDate
+				&& kycValidDate == other.kycValidDate
+				&& hashCode() == other.hashCode()
+				&& Objects.equals(userId, other.userId)
+				&& Objects.equals(userName, other.userName)
+				&& Objects.equals(docId, other.docId);
 	}
-	public void setDocId(String docId) {
-		this.docId = docId;
+	
+	@Override
+	public int hashCode() {
+		int h = hash;
+		if (h == 0) {
+			h = kycId;
+			h = 31 * h + Objects.hashCode(userId);
+			h = 31 * h + Objects.hashCode(userName);
+			h = 31 * h + kycDate;
+			h = 31 * h + kycValidDate;
+			h = 31 * h + Objects.hashCode(docId);
+			hash = h;
+		}
+		return h;
 	}
+	
 	@Override
 	public String toString() {
 		return "KYC [kycId=" + kycId + ", userId=" + userId + ", userName="
-				+ userName + ", kycDate=" + kycDate + ", kycValidDate="
-				+ kycValidDate + ", docId=" + docId + "]";
+				+ userName + ", kycDate=" + getKycDate() + ", kycValidDate="
+				+ getKycValidDate() + ", docId=" + docId + "]";
 	}
 	
-
+	public static final class Builder {
+		private int kycId;
+		private String userId;
+		private String userName;
+		private int kycDate = NO_DATE;
+		private int kycValidDate = NO_DATE;
+		private String docId;
+		
+		private Builder() {}
+		
+		public Builder kycId(int kycId) {
+			this.kycId = kycId;
+			return this;
+		}
+		public Builder userId(String userId) {
+			this.userId = userId;
+			return this;
+		}
+		public Builder userName(String userName) {
+			this.userName = userName;
+			return this;
+		}
+		public Builder kycDate(LocalDate kycDate) {
+			this.kycDate = toEpochDay(kycDate);
+			return this;
+		}
+		public Builder kycDateEpochDay(int kycDate) {
+			this.kycDate = kycDate;
+			return this;
+		}
+		public Builder kycValidDate(LocalDate kycValidDate) {
+			this.kycValidDate = toEpochDay(kycValidDate);
+			return this;
+		}
+		public Builder kycValidDateEpochDay(int kycValidDate) {
+			this.kycValidDate = kycValidDate;
+			return this;
+		}
+		public Builder docId(String docId) {
+			this.docId = docId;
+			return this;
+		}
+		
+		public KYC build() {
+			return new KYC(kycId, userId, userName, kycDate, kycValidDate, docId);
+		}
+	}
+	
+	private static LocalDate toLocalDate(int epochDay) {
+		return epochDay == NO_DATE ? null : LocalDate.ofEpochDay(epochDay);
+	}
+	
+	private static int toEpochDay(LocalDate date) {
+		return date == null ? NO_DATE : Math.toIntExact(date.toEpochDay());
+	}
+	
+	private static int parseEpochDay(String date) {
+		if (date == null || date.isEmpty()) {
+			return NO_DATE;
+		}
+		if (date.chars().allMatch(Character::isDigit)) {
+			return toEpochDay(Instant.ofEpochMilli(Long.parseLong(date)).atOffset(ZoneOffset.UTC).toLocalDate());
+		}
+		return toEpochDay(LocalDate.parse(date.length() > 10 ? date.substring(0, 10) : date));
+	}
 }
-
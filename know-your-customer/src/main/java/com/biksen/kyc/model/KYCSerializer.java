@@ -0,0 +1,122 @@
+package com.biksen.kyc.model;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.Serializer;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+
+/**
+ * Compact Kryo encoding of [KYC].
+ *
+ * Dates are written as variable-length epoch days, and a presence byte replaces the per-field null markers. The
+ * alphabetic prefix of the docId ("PAN" in "PAN12345") is written once per object graph and then referred to by index,
+ * so a batch of kycs sharing a document type repeats only the numeric part.
+ *
+ * Only RPC uses this encoding: [KYCPlugin] registers it in registerRPCKryoTypes. P2P messages, checkpoints and stored
+ * transactions keep Kryo's default field encoding, which follows the class's fields. That layout changed when the
+ * dates became epoch days and [KYCState] gained its attachment, so transactions and checkpoints written by earlier
+ * versions of this CorDapp cannot be read by this one.
+ */
+public class KYCSerializer extends Serializer<KYC> {
+    private static final int HAS_KYC_DATE = 1;
+    private static final int HAS_KYC_VALID_DATE = 2;
+
+    // Graph context keys; Kryo clears the graph context once each top-level object has been written or read.
+    private static final String WRITTEN_PREFIXES = "kyc.docIdPrefixes.written";
+    private static final String READ_PREFIXES = "kyc.docIdPrefixes.read";
+
+    public KYCSerializer() {
+        // KYC is immutable, so Kryo.copy can share instances.
+        setImmutable(true);
+    }
+
+    @Override
+    public void write(Kryo kryo, Output output, KYC kyc) {
+        final int kycDate = kyc.getKycDateEpochDay();
+        final int kycValidDate = kyc.getKycValidDateEpochDay();
+        output.writeVarInt(kyc.getKycId(), false);
+        output.writeString(kyc.getUserId());
+        output.writeString(kyc.getUserName());
+        output.writeByte((kycDate != KYC.NO_DATE ? HAS_KYC_DATE : 0) | (kycValidDate != KYC.NO_DATE ? HAS_KYC_VALID_DATE : 0));
+        if (kycDate != KYC.NO_DATE) {
+            output.writeVarInt(kycDate, false);
+        }
+        if (kycValidDate != KYC.NO_DATE) {
+            output.writeVarInt(kycValidDate, false);
+        }
+        writeDocId(kryo, output, kyc.getDocId());
+    }
+
+    @Override
+    public KYC read(Kryo kryo, Input input, Class<KYC> type) {
+        final int kycId = input.readVarInt(false);
+        final String userId = input.readString();
+        final String userName = input.readString();
+        final int present = input.readByte();
+        final int kycDate = (present & HAS_KYC_DATE) != 0 ? input.readVarInt(false) : KYC.NO_DATE;
+        final int kycValidDate = (present & HAS_KYC_VALID_DATE) != 0 ? input.readVarInt(false) : KYC.NO_DATE;
+        return new KYC(kycId, userId, userName, kycDate, kycValidDate, readDocId(kryo, input));
+    }
+
+    /**
+     * Writes a prefix reference (0 for null, 1 for a new prefix written inline, or 2 + the prefix's index in this graph)
+     * followed by the rest of the docId.
+     */
+    @SuppressWarnings("unchecked")
+    private static void writeDocId(Kryo kryo, Output output, String docId) {
+        if (docId == null) {
+            output.writeVarInt(0, true);
+            return;
+        }
+        final int split = prefixLength(docId);
+        final String prefix = docId.substring(0, split);
+        Map<String, Integer> prefixes = (Map<String, Integer>) kryo.getGraphContext().get(WRITTEN_PREFIXES);
+        if (prefixes == null) {
+            prefixes = new HashMap<>();
+            kryo.getGraphContext().put(WRITTEN_PREFIXES, prefixes);
+        }
+        final Integer index = prefixes.get(prefix);
+        if (index == null) {
+            prefixes.put(prefix, prefixes.size());
+            output.writeVarInt(1, true);
+            output.writeString(prefix);
+        } else {
+            output.writeVarInt(index + 2, true);
+        }
+        output.writeString(docId.substring(split));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static String readDocId(Kryo kryo, Input input) {
+        final int reference = input.readVarInt(true);
+        if (reference == 0) {
+            return null;
+        }
+        List<String> prefixes = (List<String>) kryo.getGraphContext().get(READ_PREFIXES);
+        if (prefixes == null) {
+            prefixes = new ArrayList<>();
+            kryo.getGraphContext().put(READ_PREFIXES, prefixes);
+        }
+        final String prefix;
+        if (reference == 1) {
+            prefix = input.readString();
+            prefixes.add(prefix);
+        } else {
+            prefix = prefixes.get(reference - 2);
+        }
+        return prefix + input.readString();
+    }
+
+    private static int prefixLength(String docId) {
+        int i = 0;
+        while (i < docId.length() && !Character.isDigit(docId.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+}
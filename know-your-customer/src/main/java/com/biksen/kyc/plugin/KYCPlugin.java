@@ -1,8 +1,8 @@
 package com.biksen.kyc.plugin;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -18,20 +18,31 @@ import net.corda.core.node.PluginServiceHub;
 import net.corda.core.transactions.SignedTransaction;
 
 import com.biksen.kyc.api.KYCApi;
+import com.biksen.kyc.attachment.AttachmentReport;
 import com.biksen.kyc.contract.KYCContract;
 import com.biksen.kyc.contract.KYCState;
+import com.biksen.kyc.contract.KYCStateSerializer;
+import com.biksen.kyc.contract.TransactionBuilderFactory;
 import com.biksen.kyc.flow.AttachmentFlow;
 import com.biksen.kyc.flow.KYCFlow;
 import com.biksen.kyc.model.KYC;
+import com.biksen.kyc.model.KYCSerializer;
+import com.biksen.kyc.service.AttachmentRecipientService;
+import com.biksen.kyc.service.KYCExpirySweeper;
+import com.biksen.kyc.service.KYCReadModel;
 import com.biksen.kyc.service.KYCService;
 import com.esotericsoftware.kryo.Kryo;
 
 public class KYCPlugin extends CordaPluginRegistry {	
 	
     /**
-     * A list of classes that expose web APIs.
+     * A list of classes that expose web APIs. The API shares one [KYCReadModel], which follows the vault for the life
+     * of the node, and the re-KYC sweep that runs over it.
      */
-    private final List<Function<CordaRPCOps, ?>> webApis = Collections.singletonList(KYCApi::new);
+    private final List<Function<CordaRPCOps, ?>> webApis = Collections.singletonList(services -> {
+        final KYCReadModel readModel = new KYCReadModel(services);
+        return new KYCApi(services, readModel, new KYCExpirySweeper(readModel));
+    });
 
     /**
      * A list of flows required for this CorDapp. Any flow which is invoked from from the web API needs to be
@@ -61,12 +72,23 @@ public class KYCPlugin extends CordaPluginRegistry {
     Map<String, Set<String>> requiredFlows = new HashMap<String, Set<String>>();
    //instance block
     {
+    	// Fail at plugin load, not in the middle of a flow, if the transaction builder cannot be resolved
+    	TransactionBuilderFactory.ensureResolved();
+
     	requiredFlows.put(KYCFlow.Initiator.class.getName(), new HashSet<>(Arrays.asList(
                 KYCState.class.getName(),
                 Party.class.getName(),
                 net.corda.core.crypto.SecureHash.SHA256.class.getName()
         )));
-    	requiredFlows.put(AttachmentFlow.Initiator.class.getName(), new HashSet<>(Arrays.asList(SignedTransaction.class.getName(), Party.class.getName())));
+    	requiredFlows.put(KYCFlow.BatchInitiator.class.getName(), new HashSet<>(Arrays.asList(
+                ArrayList.class.getName(),
+                Party.class.getName()
+        )));
+    	requiredFlows.put(AttachmentFlow.Initiator.class.getName(), new HashSet<>(Arrays.asList(
+                SignedTransaction.class.getName(),
+                ArrayList.class.getName(),
+                Party.class.getName()
+        )));
     	
     }
    
@@ -76,7 +98,10 @@ public class KYCPlugin extends CordaPluginRegistry {
      * factories that would be used when an initiating party attempts to communicate with our node using a particular
      * flow. See the [ExampleService.Service] class for an implementation.
      */
-    private final List<Function<PluginServiceHub, ?>> servicePlugins = Collections.singletonList(KYCService::new);
+    private final List<Function<PluginServiceHub, ?>> servicePlugins = Arrays.<Function<PluginServiceHub, ?>>asList(
+            // KYCService comes first: it records the attachment store location the recipient service copies from.
+            KYCService::new,
+            AttachmentRecipientService::new);
 
     /**
      * A list of directories in the resources directory that will be served by Jetty under /web.
@@ -95,11 +120,10 @@ public class KYCPlugin extends CordaPluginRegistry {
      * Register required types with Kryo (our serialisation framework).
      */
     @Override public boolean registerRPCKryoTypes(Kryo kryo) {
-        kryo.register(KYCState.class);
+        kryo.register(KYCState.class, new KYCStateSerializer());
         kryo.register(KYCContract.class);
-        kryo.register(KYC.class);
+        kryo.register(KYC.class, new KYCSerializer());
         //kryo.register(PurchaseOrder.Address.class);
-        kryo.register(Date.class);
         //kryo.register(PurchaseOrder.Item.class);
         kryo.register(KYCFlow.KYCFlowResult.Success.class);
         kryo.register(KYCFlow.KYCFlowResult.Failure.class);
@@ -107,6 +131,8 @@ public class KYCPlugin extends CordaPluginRegistry {
         kryo.register(IllegalFlowLogicException.class);
         kryo.register(AttachmentFlow.AttachmentFlowResult.Success.class);
         kryo.register(AttachmentFlow.AttachmentFlowResult.Failure.class);
+        kryo.register(AttachmentReport.class);
+        kryo.register(ArrayList.class);
         return true;
     }
 }
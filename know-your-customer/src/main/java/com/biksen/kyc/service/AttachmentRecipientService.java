@@ -0,0 +1,255 @@
+package com.biksen.kyc.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.corda.core.contracts.Attachment;
+import net.corda.core.crypto.SecureHash;
+import net.corda.core.node.PluginServiceHub;
+import net.corda.core.node.services.AttachmentStorage;
+import net.corda.core.transactions.SignedTransaction;
+import rx.Subscription;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.biksen.kyc.attachment.AttachmentStore;
+import com.biksen.kyc.attachment.SHA256Util;
+import com.biksen.kyc.flow.KYCFlowMetrics;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+
+/**
+ * Copies the attachments of every transaction the node records into a local content-addressed store, laid out as
+ * "<first two hex digits>/<sha256>", for downstream document processing.
+ *
+ * The service follows the node's validated transactions for as long as the node runs. Each attachment not yet in the
+ * store is handled on a worker pool: its content is hashed and checked against its id, then copied with a channel
+ * transfer from the node's attachment file (or streamed, if the node does not keep it as a file) into a temporary
+ * file that is moved into place. The node thread recording the transaction never waits for this.
+ *
+ * The store is the directory in kyc.attachments.receivedDir, by default "received-attachments" beside the node's
+ * attachment store. Throughput, backlog and failure metrics are registered with [KYCFlowMetrics]'s registry under
+ * "AttachmentRecipientService.<node name>", so they are published through JMX, and summarised by [getStats]. Several
+ * nodes can share a JVM, as in a mock network; each has its own service and metrics.
+ */
+public class AttachmentRecipientService {
+    public static final int WORKERS = Integer.getInteger("kyc.attachments.recipientWorkers", 4);
+
+    private static final Logger logger = LoggerFactory.getLogger(AttachmentRecipientService.class);
+    private static final String METRICS = AttachmentRecipientService.class.getSimpleName();
+
+    // By node legal name.
+    private static final Map<String, AttachmentRecipientService> RUNNING = new ConcurrentHashMap<>();
+
+    private final String nodeName;
+    private final String metricsPrefix;
+    private final AttachmentStorage attachments;
+    private final Path store;
+    private final Set<SecureHash> inProgress = ConcurrentHashMap.newKeySet();
+    private final ExecutorService workers = Executors.newFixedThreadPool(WORKERS, runnable -> {
+        final Thread thread = new Thread(runnable, "kyc-attachment-recipient");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicLong backlog = new AtomicLong();
+    private final AtomicLong transactions = new AtomicLong();
+    private final Meter stored;
+    private final Meter bytes;
+    private final Meter duplicates;
+    private final Meter failures;
+    private final Subscription subscription;
+
+    public AttachmentRecipientService(PluginServiceHub services) {
+        this.nodeName = services.getMyInfo().getLegalIdentity().getName();
+        this.metricsPrefix = MetricRegistry.name(METRICS, nodeName);
+        this.attachments = services.getStorageService().getAttachments();
+        this.store = storeLocation(attachments);
+
+        final MetricRegistry registry = KYCFlowMetrics.getRegistry();
+        // A node restarted in the same JVM replaces the gauge its previous service left behind.
+        registry.remove(MetricRegistry.name(metricsPrefix, "backlog"));
+        registry.register(MetricRegistry.name(metricsPrefix, "backlog"), (Gauge<Long>) backlog::get);
+        this.stored = registry.meter(MetricRegistry.name(metricsPrefix, "stored"));
+        this.bytes = registry.meter(MetricRegistry.name(metricsPrefix, "bytes"));
+        this.duplicates = registry.meter(MetricRegistry.name(metricsPrefix, "duplicates"));
+        this.failures = registry.meter(MetricRegistry.name(metricsPrefix, "failures"));
+
+        this.subscription = services.getStorageService().getValidatedTransactions().getUpdates().subscribe(
+                this::received,
+                e -> logger.error("Stopped following validated transactions; received attachments are no longer stored.", e));
+        RUNNING.put(nodeName, this);
+    }
+
+    /**
+     * The service running in the named node, or null before it has started. Lets the web end-points report on it.
+     */
+    public static AttachmentRecipientService forNode(String legalName) { return RUNNING.get(legalName); }
+
+    public Path getStore() { return store; }
+
+    /**
+     * Returns the file holding the attachment in the content-addressed store; it may not exist yet.
+     */
+    public Path pathOf(SecureHash hash) {
+        final String id = hash.toString();
+        return store.resolve(id.substring(0, 2)).resolve(id);
+    }
+
+    public Map<String, Object> getStats() {
+        final Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("store", store.toString());
+        stats.put("transactions", transactions.get());
+        stats.put("backlog", backlog.get());
+        stats.put("stored", stored.getCount());
+        stats.put("storedPerSecond", stored.getOneMinuteRate());
+        stats.put("bytes", bytes.getCount());
+        stats.put("bytesPerSecond", bytes.getOneMinuteRate());
+        stats.put("duplicates", duplicates.getCount());
+        stats.put("failures", failures.getCount());
+        return stats;
+    }
+
+    public void close() {
+        subscription.unsubscribe();
+        workers.shutdown();
+        RUNNING.remove(nodeName, this);
+        KYCFlowMetrics.getRegistry().removeMatching((name, metric) -> name.startsWith(metricsPrefix + "."));
+    }
+
+    /**
+     * Runs on the node thread recording the transaction, so nothing may be thrown from here.
+     */
+    private void received(SignedTransaction stx) {
+        try {
+            transactions.incrementAndGet();
+            for (SecureHash hash : stx.getTx().getAttachments()) {
+                // One copy per attachment at a time, however many transactions reference it.
+                if (!inProgress.add(hash)) {
+                    duplicates.mark();
+                    continue;
+                }
+                backlog.incrementAndGet();
+                try {
+                    workers.execute(() -> {
+                        try {
+                            copy(hash);
+                        } catch (Exception e) {
+                            failures.mark();
+                            logger.warn("Failed to store attachment {} of transaction {}: {}", hash, stx.getId(), e.getMessage());
+                        } finally {
+                            inProgress.remove(hash);
+                            backlog.decrementAndGet();
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    // Closed while the transaction was being recorded.
+                    inProgress.remove(hash);
+                    backlog.decrementAndGet();
+                    return;
+                }
+            }
+        } catch (RuntimeException e) {
+            failures.mark();
+            logger.warn("Failed to queue the attachments of transaction {}: {}", stx.getId(), e.getMessage());
+        }
+    }
+
+    private void copy(SecureHash hash) throws IOException {
+        final Path target = pathOf(hash);
+        if (Files.exists(target)) {
+            duplicates.mark();
+            return;
+        }
+        Files.createDirectories(target.getParent());
+        final Path temp = Files.createTempFile(target.getParent(), hash.toString(), ".part");
+        try {
+            final long size;
+            final Path source = AttachmentStore.pathOf(AttachmentStore.storePath(attachments), hash);
+            if (source != null) {
+                if (!Arrays.equals(SHA256Util.digest(source), hash.getBytes())) {
+                    throw new IllegalStateException("Content does not match its hash.");
+                }
+                size = transfer(source, temp);
+            } else {
+                size = stream(hash, temp);
+            }
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+            stored.mark();
+            bytes.mark(size);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Copies the file with channel transfers, which the OS can do without moving the bytes through this process.
+     */
+    private static long transfer(Path source, Path target) throws IOException {
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(target, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            final long size = in.size();
+            long position = 0;
+            while (position < size) {
+                position += in.transferTo(position, size - position, out);
+            }
+            out.force(false);
+            return size;
+        }
+    }
+
+    /**
+     * Streams the attachment out of the node's storage, hashing it on the way, for stores not kept as plain files.
+     */
+    private long stream(SecureHash hash, Path target) throws IOException {
+        final Attachment attachment = attachments.openAttachment(hash);
+        if (attachment == null) {
+            throw new IllegalStateException("The node does not hold it.");
+        }
+        final DigestInputStream in = new DigestInputStream(attachment.open(), sha256());
+        final long size;
+        try (InputStream content = in) {
+            size = Files.copy(content, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+        if (!Arrays.equals(in.getMessageDigest().digest(), hash.getBytes())) {
+            throw new IllegalStateException("Content does not match its hash.");
+        }
+        return size;
+    }
+
+    private static Path storeLocation(AttachmentStorage attachments) {
+        final String configured = System.getProperty("kyc.attachments.receivedDir");
+        if (configured != null) {
+            return Paths.get(configured);
+        }
+        final Path attachmentStore = AttachmentStore.storePath(attachments);
+        return attachmentStore == null ? Paths.get("received-attachments") : attachmentStore.resolveSibling("received-attachments");
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.biksen.kyc.service;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import net.corda.core.contracts.ContractState;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.contracts.StateRef;
+import rx.Observable;
+import rx.subjects.PublishSubject;
+import rx.subjects.Subject;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.biksen.kyc.contract.KYCState;
+
+/**
+ * Periodically finds the kycs that expire within the re-KYC horizon and publishes them, in batches, to whoever is
+ * following [getBatches].
+ *
+ * Each sweep reads the expiry projection of the [KYCReadModel] for the window [now, now + horizon], which costs
+ * O(log n + k) for k expiring kycs and never touches the vault. A kyc is published once, by the first sweep that
+ * finds it inside the horizon; it is forgotten again once its expiry date has passed.
+ */
+public class KYCExpirySweeper {
+    private static final Logger logger = LoggerFactory.getLogger(KYCExpirySweeper.class);
+
+    public static final int DEFAULT_HORIZON_DAYS = Integer.getInteger("kyc.expiry.horizonDays", 30);
+    public static final long DEFAULT_SWEEP_MINUTES = Long.getLong("kyc.expiry.sweepMinutes", 60);
+    public static final int BATCH_SIZE = 500;
+
+    /**
+     * The kycs found by one sweep that were not published before, at most [BATCH_SIZE] of them.
+     */
+    public static final class Batch {
+        private final long sweptAt;
+        private final int horizonDays;
+        private final List<StateAndRef<ContractState>> states;
+
+        private Batch(long sweptAt, int horizonDays, List<StateAndRef<ContractState>> states) {
+            this.sweptAt = sweptAt;
+            this.horizonDays = horizonDays;
+            this.states = Collections.unmodifiableList(states);
+        }
+
+        public long getSweptAt() { return sweptAt; }
+        public int getHorizonDays() { return horizonDays; }
+        public List<StateAndRef<ContractState>> getStates() { return states; }
+    }
+
+    private final KYCReadModel readModel;
+    private final int horizonDays;
+    private final Subject<Batch, Batch> batches = PublishSubject.<Batch>create().toSerialized();
+    // Published kycs and their expiry day, so each is published only once. Only touched on the sweeper thread.
+    private final Map<StateRef, Integer> published = new HashMap<>();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, "kyc-expiry-sweeper");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public KYCExpirySweeper(KYCReadModel readModel) {
+        this(readModel, DEFAULT_HORIZON_DAYS, DEFAULT_SWEEP_MINUTES, TimeUnit.MINUTES);
+    }
+
+    public KYCExpirySweeper(KYCReadModel readModel, int horizonDays, long period, TimeUnit unit) {
+        this.readModel = readModel;
+        this.horizonDays = horizonDays;
+        // The first sweep runs straight away rather than a whole period after start-up.
+        scheduler.scheduleWithFixedDelay(this::sweepQuietly, 0, period, unit);
+    }
+
+    /**
+     * Batches of kycs entering the re-KYC horizon. Batches are published as sweeps run and are not replayed.
+     */
+    public Observable<Batch> getBatches() { return batches; }
+
+    public int getHorizonDays() { return horizonDays; }
+
+    public void close() {
+        scheduler.shutdownNow();
+        batches.onCompleted();
+    }
+
+    private void sweepQuietly() {
+        try {
+            sweep(System.currentTimeMillis());
+        } catch (RuntimeException e) {
+            // A failed sweep must not cancel the schedule; the next one picks up what this one missed.
+            logger.error("Expiry sweep failed", e);
+        }
+    }
+
+    private void sweep(long now) {
+        final long today = Instant.ofEpochMilli(now).atOffset(ZoneOffset.UTC).toLocalDate().toEpochDay();
+        published.values().removeIf(expiry -> expiry < today);
+
+        List<StateAndRef<ContractState>> batch = new ArrayList<>();
+        for (StateAndRef<ContractState> stateAndRef : readModel.expiringBetween(today, today + horizonDays)) {
+            final int expiry = ((KYCState) stateAndRef.getState().getData()).getKYC().getKycValidDateEpochDay();
+            if (published.putIfAbsent(stateAndRef.getRef(), expiry) != null) {
+                continue;
+            }
+            batch.add(stateAndRef);
+            if (batch.size() == BATCH_SIZE) {
+                batches.onNext(new Batch(now, horizonDays, batch));
+                batch = new ArrayList<>();
+            }
+        }
+        if (!batch.isEmpty()) {
+            batches.onNext(new Batch(now, horizonDays, batch));
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.biksen.kyc.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.corda.core.messaging.FlowHandle;
+import rx.Observable;
+import rx.subjects.ReplaySubject;
+import rx.subjects.Subject;
+
+import com.biksen.kyc.flow.KYCFlow;
+
+/**
+ * Keeps track of KYC flows started without waiting for their result, so HTTP callers can poll for the current
+ * [ProgressTracker] step and the final [KYCFlow.KYCFlowResult], or follow the steps as a stream of events.
+ *
+ * Running flows are always retained; only the most recent [MAX_COMPLETED] finished flows are kept.
+ */
+public class KYCFlowTracker {
+    public static final int MAX_COMPLETED = 1000;
+
+    /**
+     * A progress step change ("step") or the final outcome ("result") of a tracked flow.
+     */
+    public static final class Event {
+        private final String type;
+        private final String data;
+
+        private Event(String type, String data) {
+            this.type = type;
+            this.data = data;
+        }
+
+        public String getType() { return type; }
+        public String getData() { return data; }
+    }
+
+    public static final class TrackedFlow {
+        private final String flowId;
+        private final String counterparty;
+        private final long startedAt = System.currentTimeMillis();
+        // The handful of steps a KYC flow goes through is cheap to replay to late subscribers.
+        private final Subject<Event, Event> events = ReplaySubject.<Event>create().toSerialized();
+        private volatile String currentStep;
+        private volatile KYCFlow.KYCFlowResult result;
+        private volatile String error;
+        private volatile long finishedAt;
+
+        private TrackedFlow(String flowId, String counterparty) {
+            this.flowId = flowId;
+            this.counterparty = counterparty;
+        }
+
+        public String getFlowId() { return flowId; }
+        public boolean isDone() { return finishedAt != 0; }
+        public Observable<Event> getEvents() { return events; }
+
+        public Map<String, Object> toStatus() {
+            final Map<String, Object> status = new LinkedHashMap<>();
+            status.put("flowId", flowId);
+            status.put("counterparty", counterparty);
+            status.put("currentStep", currentStep);
+            status.put("done", isDone());
+            status.put("success", result instanceof KYCFlow.KYCFlowResult.Success);
+            status.put("result", result != null ? result.toString() : error);
+            status.put("elapsedMillis", (isDone() ? finishedAt : System.currentTimeMillis()) - startedAt);
+            return status;
+        }
+    }
+
+    private final ConcurrentMap<String, TrackedFlow> flows = new ConcurrentHashMap<>();
+    private final Queue<String> completed = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger completedCount = new AtomicInteger();
+
+    /**
+     * Starts tracking the flow behind the given handle and returns the id callers use to look it up.
+     */
+    public TrackedFlow track(FlowHandle<KYCFlow.KYCFlowResult> handle, String counterparty) {
+        final TrackedFlow flow = new TrackedFlow(handle.getId().getUuid().toString(), counterparty);
+        flows.put(flow.flowId, flow);
+
+        handle.getProgress().subscribe(step -> {
+            flow.currentStep = step;
+            flow.events.onNext(new Event("step", step));
+        }, error -> { /* The outcome is reported through the return value. */ });
+
+        handle.getReturnValue().first().subscribe(
+                result -> {
+                    flow.result = result;
+                    finish(flow, new Event("result", result.toString()));
+                },
+                error -> {
+                    flow.error = "Failure(" + error.getMessage() + ")";
+                    finish(flow, new Event("result", flow.error));
+                });
+        return flow;
+    }
+
+    public TrackedFlow get(String flowId) { return flows.get(flowId); }
+
+    private void finish(TrackedFlow flow, Event outcome) {
+        flow.finishedAt = System.currentTimeMillis();
+        flow.events.onNext(outcome);
+        flow.events.onCompleted();
+
+        completed.add(flow.flowId);
+        if (completedCount.incrementAndGet() > MAX_COMPLETED) {
+            final String evicted = completed.poll();
+            if (evicted != null) {
+                completedCount.decrementAndGet();
+                flows.remove(evicted);
+            }
+        }
+    }
+}
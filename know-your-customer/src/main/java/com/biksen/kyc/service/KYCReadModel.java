@@ -0,0 +1,230 @@
+package com.biksen.kyc.service;
+
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import kotlin.Pair;
+import net.corda.core.contracts.ContractState;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.contracts.StateRef;
+import net.corda.core.messaging.CordaRPCOps;
+import net.corda.core.node.services.Vault;
+import rx.Observable;
+import rx.Subscription;
+
+import com.biksen.kyc.contract.KYCState;
+import com.biksen.kyc.model.KYC;
+
+/**
+ * In-memory projections of the unconsumed [KYCState]s in the vault, so the web API never copies the vault to answer
+ * a query.
+ *
+ * The model subscribes to the vault update feed once, for the life of the node. Updates are applied in order on a
+ * single writer thread, which lets readers on any thread use the projections without locking: each lookup sees the
+ * model as of some recent update. Every state is indexed by userId, kycId, counterparty (buyer and seller) and expiry
+ * date (kycValidDate); the index entries all share the one [StateAndRef].
+ *
+ * The update lag reported by [getStats] is the time from an update arriving on the feed to it being visible to
+ * readers.
+ */
+public class KYCReadModel {
+    private final Map<StateRef, StateAndRef<ContractState>> current = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Set<StateAndRef<ContractState>>> byUserId = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Integer, Set<StateAndRef<ContractState>>> byKycId = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Set<StateAndRef<ContractState>>> byCounterparty = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListMap<Integer, Set<StateAndRef<ContractState>>> byExpiry = new ConcurrentSkipListMap<>();
+
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, "kyc-read-model");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Subscription subscription;
+
+    private final AtomicLong updatesApplied = new AtomicLong();
+    private final AtomicLong backlog = new AtomicLong();
+    private final AtomicLong totalLagNanos = new AtomicLong();
+    private volatile long lastLagNanos;
+    private volatile long maxLagNanos;
+    private volatile long lastAppliedAt;
+
+    public KYCReadModel(CordaRPCOps services) {
+        // The update feed is buffered until subscribed, and the snapshot is queued first on the writer, so updates are
+        // applied in order after it and none is lost between the two.
+        final Pair<List<StateAndRef<ContractState>>, Observable<Vault.Update>> vault = services.vaultAndUpdates();
+        final List<StateAndRef<ContractState>> snapshot = vault.getFirst();
+        writer.execute(() -> snapshot.forEach(this::produced));
+        this.subscription = vault.getSecond().subscribe(this::enqueue);
+    }
+
+    /**
+     * Returns the latest KYC (by kycDate) recorded for the user, or null if the vault holds none.
+     */
+    public KYC latestForUser(String userId) {
+        KYC latest = null;
+        for (StateAndRef<ContractState> stateAndRef : forUser(userId)) {
+            final KYC kyc = kycOf(stateAndRef);
+            if (latest == null || kyc.getKycDateEpochDay() > latest.getKycDateEpochDay()) {
+                latest = kyc;
+            }
+        }
+        return latest;
+    }
+
+    public Set<StateAndRef<ContractState>> forUser(String userId) {
+        return userId == null ? Collections.emptySet() : lookup(byUserId, key(userId));
+    }
+
+    public Set<StateAndRef<ContractState>> forKycId(int kycId) {
+        return lookup(byKycId, kycId);
+    }
+
+    public Set<StateAndRef<ContractState>> forCounterparty(String name) {
+        return name == null ? Collections.emptySet() : lookup(byCounterparty, key(name));
+    }
+
+    /**
+     * Returns the states whose kycValidDate falls in the inclusive range of epoch days, in expiry order.
+     */
+    public Iterable<StateAndRef<ContractState>> expiringBetween(long fromDay, long toDay) {
+        if (fromDay > toDay) {
+            return Collections.emptyList();
+        }
+        final NavigableMap<Integer, Set<StateAndRef<ContractState>>> window = byExpiry.subMap(clamp(fromDay), true, clamp(toDay), true);
+        return () -> window.values().stream().flatMap(Set::stream).iterator();
+    }
+
+    /**
+     * Returns the states expiring between now and the end of the given number of days, soonest first.
+     */
+    public Iterable<StateAndRef<ContractState>> expiringWithin(int days) {
+        final long today = LocalDate.now(ZoneOffset.UTC).toEpochDay();
+        return expiringBetween(today, today + days);
+    }
+
+    /**
+     * Returns every current KYC state.
+     */
+    public Iterable<StateAndRef<ContractState>> all() {
+        return Collections.unmodifiableCollection(current.values());
+    }
+
+    public int size() { return current.size(); }
+
+    public Map<String, Object> getStats() {
+        final long applied = updatesApplied.get();
+        final Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("states", current.size());
+        stats.put("users", byUserId.size());
+        stats.put("updatesApplied", applied);
+        stats.put("backlog", backlog.get());
+        stats.put("lastLagMicros", TimeUnit.NANOSECONDS.toMicros(lastLagNanos));
+        stats.put("maxLagMicros", TimeUnit.NANOSECONDS.toMicros(maxLagNanos));
+        stats.put("meanLagMicros", applied == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(totalLagNanos.get() / applied));
+        stats.put("lastAppliedAt", lastAppliedAt == 0 ? null : new Date(lastAppliedAt));
+        return stats;
+    }
+
+    public void close() {
+        subscription.unsubscribe();
+        writer.shutdown();
+    }
+
+    private void enqueue(Vault.Update update) {
+        final long receivedAt = System.nanoTime();
+        backlog.incrementAndGet();
+        writer.execute(() -> {
+            update.getConsumed().forEach(this::consumed);
+            update.getProduced().forEach(this::produced);
+
+            final long lag = System.nanoTime() - receivedAt;
+            backlog.decrementAndGet();
+            updatesApplied.incrementAndGet();
+            totalLagNanos.addAndGet(lag);
+            lastLagNanos = lag;
+            if (lag > maxLagNanos) {
+                maxLagNanos = lag;
+            }
+            lastAppliedAt = System.currentTimeMillis();
+        });
+    }
+
+    // Only ever called on the writer thread.
+    private void produced(StateAndRef<ContractState> stateAndRef) {
+        final ContractState data = stateAndRef.getState().getData();
+        if (!(data instanceof KYCState) || ((KYCState) data).getKYC() == null
+                || current.putIfAbsent(stateAndRef.getRef(), stateAndRef) != null) {
+            return;
+        }
+        final KYCState state = (KYCState) data;
+        final KYC kyc = state.getKYC();
+        if (kyc.getUserId() != null) {
+            add(byUserId, key(kyc.getUserId()), stateAndRef);
+        }
+        add(byKycId, kyc.getKycId(), stateAndRef);
+        add(byCounterparty, key(state.getBuyer().getName()), stateAndRef);
+        add(byCounterparty, key(state.getSeller().getName()), stateAndRef);
+        if (kyc.getKycValidDateEpochDay() != KYC.NO_DATE) {
+            add(byExpiry, kyc.getKycValidDateEpochDay(), stateAndRef);
+        }
+    }
+
+    // Only ever called on the writer thread.
+    private void consumed(StateAndRef<ContractState> stateAndRef) {
+        final StateAndRef<ContractState> removed = current.remove(stateAndRef.getRef());
+        if (removed == null) {
+            return;
+        }
+        final KYCState state = (KYCState) removed.getState().getData();
+        final KYC kyc = state.getKYC();
+        if (kyc.getUserId() != null) {
+            remove(byUserId, key(kyc.getUserId()), removed);
+        }
+        remove(byKycId, kyc.getKycId(), removed);
+        remove(byCounterparty, key(state.getBuyer().getName()), removed);
+        remove(byCounterparty, key(state.getSeller().getName()), removed);
+        if (kyc.getKycValidDateEpochDay() != KYC.NO_DATE) {
+            remove(byExpiry, kyc.getKycValidDateEpochDay(), removed);
+        }
+    }
+
+    private static <K> void add(ConcurrentMap<K, Set<StateAndRef<ContractState>>> index, K key, StateAndRef<ContractState> stateAndRef) {
+        index.computeIfAbsent(key, k -> ConcurrentHashMap.newKeySet()).add(stateAndRef);
+    }
+
+    private static <K> void remove(ConcurrentMap<K, Set<StateAndRef<ContractState>>> index, K key, StateAndRef<ContractState> stateAndRef) {
+        index.computeIfPresent(key, (k, states) -> states.remove(stateAndRef) && states.isEmpty() ? null : states);
+    }
+
+    private static <K> Set<StateAndRef<ContractState>> lookup(Map<K, Set<StateAndRef<ContractState>>> index, K key) {
+        final Set<StateAndRef<ContractState>> states = index.get(key);
+        return states == null ? Collections.emptySet() : Collections.unmodifiableSet(states);
+    }
+
+    private static KYC kycOf(StateAndRef<ContractState> stateAndRef) {
+        return ((KYCState) stateAndRef.getState().getData()).getKYC();
+    }
+
+    private static int clamp(long epochDay) {
+        return (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, epochDay));
+    }
+
+    private static String key(String value) {
+        return value.toLowerCase(Locale.ROOT);
+    }
+}
@@ -1,7 +1,9 @@
 package com.biksen.kyc.service;
 
+import com.biksen.kyc.attachment.AttachmentStore;
 import com.biksen.kyc.flow.AttachmentFlow;
 import com.biksen.kyc.flow.KYCFlow;
+import com.biksen.kyc.flow.KYCFlowMetrics;
 
 import kotlin.jvm.JvmClassMappingKt;
 import net.corda.core.node.PluginServiceHub;
@@ -23,9 +25,20 @@ public class KYCService {
                 KYCFlow.Acceptor::new
         );
         
+        services.registerFlowInitiator(
+                JvmClassMappingKt.getKotlinClass(KYCFlow.BatchInitiator.class),
+                KYCFlow.BatchAcceptor::new
+        );
+        
         services.registerFlowInitiator(
                 JvmClassMappingKt.getKotlinClass(AttachmentFlow.Initiator.class),
                 AttachmentFlow.Acceptor::new
         );
+
+        // Lets the web end-points, which run in this process, stream attachments straight from disk
+        AttachmentStore.register(services.getMyInfo().getLegalIdentity().getName(), services.getStorageService().getAttachments());
+
+        // Publishes the per-step flow timers as MBeans
+        KYCFlowMetrics.startJmx();
     }
 }
\ No newline at end of file
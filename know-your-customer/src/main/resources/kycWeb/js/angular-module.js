@@ -28,9 +28,13 @@ app.controller('DemoAppController', function($http, $location, $uibModal) {
 
     // We identify the node based on its localhost port.
     const nodePort = $location.port();
-    const apiBaseURL = "http://localhost:" + nodePort + "/api/example/";
+    const apiBaseURL = "http://localhost:" + nodePort + "/api/kyc/";
+    const pageSize = 50;
     let peers = [];
 
+    // Cursors of the pages visited so far; the last entry is the cursor of the page on screen.
+    let cursors = [null];
+
     $http.get(apiBaseURL + "me").then((response) => demoApp.thisNode = response.data.me);
 
     $http.get(apiBaseURL + "peers").then((response) => peers = response.data.peers);
@@ -49,12 +53,33 @@ app.controller('DemoAppController', function($http, $location, $uibModal) {
         modalInstance.result.then(() => {}, () => {});
     };
 
-    demoApp.getPOs = () => $http.get(apiBaseURL + "purchase-orders")
-        .then((response) => demoApp.pos = Object.keys(response.data)
-            .map((key) => response.data[key].state.data)
-            .reverse());
+    const loadPage = (cursor) => $http.get(apiBaseURL + "get-kycs", {
+            params: { limit: pageSize, sort: "kycDate", order: "desc", cursor: cursor || undefined }
+        })
+        .then((response) => {
+            demoApp.kycs = response.data.items;
+            demoApp.nextCursor = response.data.nextCursor;
+            demoApp.hasPrevious = cursors.length > 1;
+        });
+
+    demoApp.getKYCs = () => {
+        cursors = [null];
+        return loadPage(null);
+    };
+
+    demoApp.nextPage = () => {
+        if (!demoApp.nextCursor) return;
+        cursors.push(demoApp.nextCursor);
+        return loadPage(demoApp.nextCursor);
+    };
+
+    demoApp.previousPage = () => {
+        if (cursors.length < 2) return;
+        cursors.pop();
+        return loadPage(cursors[cursors.length - 1]);
+    };
 
-    demoApp.getPOs();
+    demoApp.getKYCs();
 });
 
 app.controller('ModalInstanceCtrl', function ($http, $location, $uibModalInstance, $uibModal, apiBaseURL, peers) {
@@ -0,0 +1,42 @@
+package com.biksen.kyc;
+
+import java.time.LocalDate;
+
+import net.corda.core.crypto.CryptoUtilities;
+import net.corda.core.crypto.Party;
+
+import com.biksen.kyc.contract.KYCContract;
+import com.biksen.kyc.contract.KYCState;
+import com.biksen.kyc.model.KYC;
+
+/**
+ * Parties and kycs shared by the tests and the benchmarks. Keys are generated once per JVM.
+ */
+public final class TestFixtures {
+    public static final Party NOTARY = party("Controller");
+    public static final Party BUYER = party("ICICI");
+    public static final Party SELLER = party("HDFC");
+
+    private TestFixtures() {}
+
+    /**
+     * A valid kyc with the given id, to be adjusted by the caller.
+     */
+    public static KYC.Builder kyc(int kycId) {
+        return KYC.builder()
+                .kycId(kycId)
+                .userId("user" + kycId)
+                .userName("User " + kycId)
+                .kycDate(LocalDate.of(2017, 1, 1))
+                .kycValidDate(LocalDate.of(2018, 1, 1))
+                .docId("PAN/" + kycId);
+    }
+
+    public static KYCState kycState(KYC kyc) {
+        return new KYCState(kyc, BUYER, SELLER, new KYCContract());
+    }
+
+    public static Party party(String name) {
+        return new Party(name, CryptoUtilities.getComposite(CryptoUtilities.generateKeyPair().getPublic()));
+    }
+}
@@ -0,0 +1,38 @@
+package com.biksen.kyc.api;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class KYCQueryTest {
+
+    @Test
+    public void cursorRoundTrips() {
+        final String[] parts = { "USER_ID", "first\nsecond.line", "ref\n(0)" };
+        assertArrayEquals(parts, KYCQuery.decodeCursor(KYCQuery.encodeCursor(parts)));
+    }
+
+    @Test
+    public void emptyPartsRoundTrip() {
+        final String[] parts = { "DOC_ID", "", "ref" };
+        assertArrayEquals(parts, KYCQuery.decodeCursor(KYCQuery.encodeCursor(parts)));
+    }
+
+    @Test
+    public void cursorIsAcceptedForItsOwnSortOrder() {
+        final String cursor = KYCQuery.encodeCursor("USER_ID", "line\nbreak", "ref");
+        new KYCQuery(null, null, null, null, null, null, null, "userId", null, null, cursor);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void cursorOfAnotherSortOrderIsRejected() {
+        final String cursor = KYCQuery.encodeCursor("USER_ID", "user", "ref");
+        new KYCQuery(null, null, null, null, null, null, null, "docId", null, null, cursor);
+    }
+
+    @Test
+    public void partCountIsPreserved() {
+        assertEquals(3, KYCQuery.decodeCursor(KYCQuery.encodeCursor("KYC_ID", "7", "ref")).length);
+    }
+}
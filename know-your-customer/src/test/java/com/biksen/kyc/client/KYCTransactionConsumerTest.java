@@ -0,0 +1,141 @@
+package com.biksen.kyc.client;
+
+import static com.biksen.kyc.TestFixtures.NOTARY;
+import static com.biksen.kyc.TestFixtures.kyc;
+import static com.biksen.kyc.TestFixtures.kycState;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import kotlin.Pair;
+import net.corda.core.messaging.CordaRPCOps;
+import net.corda.core.transactions.SignedTransaction;
+import rx.Observable;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.biksen.kyc.contract.KYCState;
+
+public class KYCTransactionConsumerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void resumesAgainstShuffledHistory() throws Exception {
+        final Path checkpoint = folder.getRoot().toPath().resolve("consumer.checkpoint");
+        final List<SignedTransaction> all = new ArrayList<>();
+        for (int kycId = 0; kycId < 20; kycId++) {
+            all.add(transaction(kycId));
+        }
+
+        // The first run sees every other transaction.
+        final List<SignedTransaction> firstHistory = new ArrayList<>();
+        final Set<Integer> expectedFirst = new HashSet<>();
+        for (int kycId = 0; kycId < all.size(); kycId += 2) {
+            firstHistory.add(all.get(kycId));
+            expectedFirst.add(kycId);
+        }
+        Collections.shuffle(firstHistory, new Random(1));
+        assertEquals(expectedFirst, consume(firstHistory, checkpoint, expectedFirst.size()));
+
+        // The node returns its history in another order after the restart; only the unseen half may be delivered.
+        final List<SignedTransaction> secondHistory = new ArrayList<>(all);
+        Collections.shuffle(secondHistory, new Random(2));
+        final Set<Integer> expectedSecond = new HashSet<>();
+        for (int kycId = 1; kycId < all.size(); kycId += 2) {
+            expectedSecond.add(kycId);
+        }
+        assertEquals(expectedSecond, consume(secondHistory, checkpoint, expectedSecond.size()));
+
+        Collections.shuffle(secondHistory, new Random(3));
+        assertEquals(Collections.emptySet(), consume(secondHistory, checkpoint, 0));
+    }
+
+    @Test
+    public void historyBeforeTheMarkIsSkippedAndTheCheckpointStaysBounded() throws Exception {
+        final Path checkpoint = folder.getRoot().toPath().resolve("consumer.checkpoint");
+        final int window = KYCTransactionConsumer.RECENT_WINDOW;
+        final List<SignedTransaction> all = new ArrayList<>();
+        for (int kycId = 0; kycId < window + 100; kycId++) {
+            all.add(transaction(kycId));
+        }
+
+        final List<SignedTransaction> firstHistory = new ArrayList<>(all.subList(0, window + 50));
+        assertEquals(window + 50, consume(firstHistory, checkpoint, window + 50).size());
+        assertTrue(Files.readAllLines(checkpoint, StandardCharsets.UTF_8).size() <= window + 1);
+
+        // Only the most recent transactions may come back in another order.
+        final List<SignedTransaction> secondHistory = new ArrayList<>(all);
+        Collections.shuffle(secondHistory.subList(secondHistory.size() - 80, secondHistory.size()), new Random(4));
+        final Set<Integer> expectedSecond = new HashSet<>();
+        for (int kycId = window + 50; kycId < all.size(); kycId++) {
+            expectedSecond.add(kycId);
+        }
+        assertEquals(expectedSecond, consume(secondHistory, checkpoint, expectedSecond.size()));
+        assertTrue(Files.readAllLines(checkpoint, StandardCharsets.UTF_8).size() <= window + 1);
+    }
+
+    /**
+     * Runs a consumer over the history until the expected number of kycs has been delivered and checkpointed, checks
+     * nothing more arrives, and returns the delivered kyc ids.
+     */
+    private static Set<Integer> consume(List<SignedTransaction> history, Path checkpoint, int expected) throws Exception {
+        final long checkpointedBefore = checkpointed(checkpoint);
+        final BlockingQueue<KYCTransactionConsumer.Record<KYCState>> received = new LinkedBlockingQueue<>();
+        final Set<Integer> kycIds = new HashSet<>();
+        try (KYCTransactionConsumer<KYCState> consumer = new KYCTransactionConsumer<>(
+                rpc(history), KYCState.class, new QueueSink<>(received), checkpoint, 4, 10)) {
+            consumer.start();
+            for (int i = 0; i < expected; i++) {
+                final KYCTransactionConsumer.Record<KYCState> record = received.poll(10, TimeUnit.SECONDS);
+                assertNotNull("Expected " + expected + " kycs, got " + i, record);
+                kycIds.add(record.getState().getKYC().getKycId());
+            }
+            assertNull(received.poll(500, TimeUnit.MILLISECONDS));
+            final long deadline = System.currentTimeMillis() + 10000;
+            while (checkpointed(checkpoint) < checkpointedBefore + expected && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+        }
+        return kycIds;
+    }
+
+    private static long checkpointed(Path checkpoint) throws Exception {
+        if (!Files.exists(checkpoint)) {
+            return 0;
+        }
+        return Long.parseLong(Files.readAllLines(checkpoint, StandardCharsets.UTF_8).get(0));
+    }
+
+    private static CordaRPCOps rpc(List<SignedTransaction> history) {
+        return (CordaRPCOps) Proxy.newProxyInstance(CordaRPCOps.class.getClassLoader(), new Class<?>[] { CordaRPCOps.class },
+                (proxy, method, args) -> {
+                    if (method.getName().equals("verifiedTransactions")) {
+                        return new Pair<>(history, Observable.<SignedTransaction>never());
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    private static SignedTransaction transaction(int kycId) {
+        return kycState(kyc(kycId).build()).generateAgreement(NOTARY).toSignedTransaction(false);
+    }
+}
@@ -1,5 +1,113 @@
 package com.biksen.kyc.contract;
 
+import static com.biksen.kyc.TestFixtures.BUYER;
+import static com.biksen.kyc.TestFixtures.SELLER;
+import static com.biksen.kyc.TestFixtures.kyc;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import net.corda.core.contracts.AuthenticatedObject;
+import net.corda.core.contracts.CommandData;
+import net.corda.core.contracts.ContractState;
+import net.corda.core.contracts.Timestamp;
+import net.corda.core.contracts.TransactionForContract;
+import net.corda.core.crypto.CompositeKey;
+import net.corda.core.crypto.Party;
+import net.corda.core.crypto.SecureHash;
+
+import org.junit.Test;
+
+import com.biksen.kyc.model.KYC;
+
 public class KYCContractTest {
 
+    @Test
+    public void validStatesPass() {
+        assertTrue(KYCValidator.validate(Arrays.asList(state(kyc(1).build(), SELLER), state(kyc(2).build(), SELLER))).isEmpty());
+    }
+
+    @Test
+    public void everyFailureIsReported() {
+        final KYC kyc = kyc(1).userId("").kycValidDate(LocalDate.of(2016, 1, 1)).build();
+        final List<String> failures = KYCValidator.validate(Collections.singletonList(state(kyc, BUYER)));
+        assertEquals(3, failures.size());
+    }
+
+    @Test
+    public void duplicateKycIdsAreReportedOnce() {
+        final List<String> failures = KYCValidator.validate(Arrays.asList(
+                state(kyc(7).build(), SELLER), state(kyc(7).build(), SELLER), state(kyc(7).build(), SELLER)));
+        assertEquals(Collections.singletonList("kycId 7: The kyc id must be unique within the transaction."), failures);
+    }
+
+    @Test
+    public void duplicatesInLargeBatchesAreReportedOnce() {
+        final List<KYCState> states = new ArrayList<>();
+        for (int i = 0; i <= KYCValidator.PAIRWISE_LIMIT; i++) {
+            states.add(state(kyc(i % 2 == 0 ? 7 : 1000 + i).build(), SELLER));
+        }
+        assertEquals(Collections.singletonList("kycId 7: The kyc id must be unique within the transaction."),
+                KYCValidator.validate(states));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void requireValidThrows() {
+        KYCValidator.requireValid(Collections.singletonList(state(kyc(1).docId("PAN 123").build(), SELLER)));
+    }
+
+    @Test
+    public void contractAcceptsAnIssuance() {
+        final KYCState state = state(kyc(1).build(), SELLER);
+        new KYCContract().verify(issuance(state, state.getParticipants()));
+    }
+
+    @Test
+    public void contractRejectsTheSamePartyAsBuyerAndSeller() {
+        final KYCState state = state(kyc(1).build(), BUYER);
+        assertRejected(issuance(state, state.getParticipants()), "The buyer and the seller cannot be the same entity.");
+    }
+
+    @Test
+    public void contractRequiresEveryParticipantToSign() {
+        final KYCState state = state(kyc(1).build(), SELLER);
+        assertRejected(issuance(state, Collections.singletonList(BUYER.getOwningKey())), "All of the participants must be signers.");
+    }
+
+    /**
+     * An issuance of the state with a Place command signed by the given keys, timestamped now.
+     */
+    private static TransactionForContract issuance(KYCState state, List<CompositeKey> signers) {
+        final AuthenticatedObject<CommandData> place = new AuthenticatedObject<>(
+                signers, Collections.emptyList(), new KYCContract.Commands.Place());
+        return new TransactionForContract(
+                Collections.emptyList(),
+                Collections.<ContractState>singletonList(state),
+                Collections.emptyList(),
+                Collections.singletonList(place),
+                SecureHash.randomSHA256(),
+                null,
+                new Timestamp(Instant.now(), Duration.ofSeconds(30)));
+    }
+
+    private static void assertRejected(TransactionForContract tx, String reason) {
+        try {
+            new KYCContract().verify(tx);
+            fail("Expected the contract to reject the transaction: " + reason);
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains(reason));
+        }
+    }
+
+    private static KYCState state(KYC kyc, Party seller) {
+        return new KYCState(kyc, BUYER, seller, new KYCContract());
+    }
 }
@@ -0,0 +1,88 @@
+package com.biksen.kyc.contract;
+
+import static com.biksen.kyc.TestFixtures.BUYER;
+import static com.biksen.kyc.TestFixtures.SELLER;
+import static com.biksen.kyc.TestFixtures.kyc;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.UUID;
+
+import net.corda.core.contracts.UniqueIdentifier;
+import net.corda.core.crypto.SecureHash;
+import net.corda.core.serialization.KryoKt;
+
+import org.junit.Test;
+
+import com.biksen.kyc.model.KYC;
+import com.biksen.kyc.model.KYCSerializer;
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+
+public class KYCStateSerializerTest {
+
+    @Test
+    public void kycRoundTrips() {
+        final KYC kyc = kyc(1).build();
+        assertEquals(kyc, roundTrip(kyc, KYC.class));
+    }
+
+    @Test
+    public void kycWithoutDatesOrDocIdRoundTrips() {
+        final KYC kyc = kyc(2).kycDateEpochDay(KYC.NO_DATE).kycValidDateEpochDay(KYC.NO_DATE).docId(null).build();
+        final KYC read = roundTrip(kyc, KYC.class);
+        assertEquals(kyc, read);
+        assertEquals(KYC.NO_DATE, read.getKycDateEpochDay());
+        assertEquals(KYC.NO_DATE, read.getKycValidDateEpochDay());
+        assertNull(read.getDocId());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void kycsSharingADocIdPrefixRoundTrip() {
+        final ArrayList<KYC> kycs = new ArrayList<>(Arrays.asList(
+                kyc(1).docId("PAN1").build(), kyc(2).docId("PAN2").build(), kyc(3).docId("AADHAAR3").build(), kyc(4).docId("PAN4").build()));
+        assertEquals(kycs, roundTrip(kycs, ArrayList.class));
+    }
+
+    @Test
+    public void stateWithoutAttachmentRoundTrips() {
+        final KYCState state = new KYCState(kyc(1).build(), BUYER, SELLER, new KYCContract());
+        final KYCState read = roundTrip(state, KYCState.class);
+        assertEquals(state, read);
+        assertNull(read.getAttachment());
+        assertEquals("1", read.getLinearId().getExternalId());
+    }
+
+    @Test
+    public void stateWithCustomExternalIdAndAttachmentRoundTrips() {
+        final KYCState state = new KYCState(kyc(1).build(), BUYER, SELLER, new KYCContract(),
+                new UniqueIdentifier("customer-42", UUID.randomUUID()), SecureHash.Companion.sha256("bundle"));
+        final KYCState read = roundTrip(state, KYCState.class);
+        assertEquals(state, read);
+        assertEquals("customer-42", read.getLinearId().getExternalId());
+        assertEquals(state.getAttachment(), read.getAttachment());
+    }
+
+    @Test
+    public void stateWithoutDatesRoundTrips() {
+        final KYC kyc = kyc(3).kycDateEpochDay(KYC.NO_DATE).kycValidDateEpochDay(KYC.NO_DATE).build();
+        final KYCState state = new KYCState(kyc, BUYER, SELLER, new KYCContract());
+        assertEquals(state, roundTrip(state, KYCState.class));
+    }
+
+    /**
+     * Writes and reads back with the serializers as KYCPlugin registers them for RPC.
+     */
+    private static <T> T roundTrip(T value, Class<T> type) {
+        final Kryo kryo = KryoKt.createKryo(new Kryo());
+        kryo.register(KYC.class, new KYCSerializer());
+        kryo.register(KYCState.class, new KYCStateSerializer());
+        final Output output = new Output(1024, -1);
+        kryo.writeObject(output, value);
+        return kryo.readObject(new Input(output.toBytes()), type);
+    }
+}